@@ -0,0 +1,226 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Set;
+
+/** Batch mode, which may be invoked as
+ *      java gitlet.Main batch [-z] [FILE]
+ *  in the working directory of a repository.  It reads commands from FILE,
+ *  or else the standard input, one per line, or with -z one per
+ *  NUL-terminated record (so that a message may hold newlines), and runs
+ *  them one after another on the repository, read once and saved only at
+ *  the end and at each "checkpoint" command.  A command is split into
+ *  arguments at whitespace, except within single or double quotes; within
+ *  double quotes a backslash takes the next character as it is.  Empty
+ *  commands and those starting with # are skipped.
+ *
+ *  What each command prints is followed by a line
+ *      <<< N COMMAND: ok MS ms
+ *  or
+ *      <<< N COMMAND: failed MS ms: MESSAGE
+ *  N being its line (or record) number, and the batch ends with a line
+ *  giving the number of commands run and failed and the time taken.  A
+ *  failed command does not stop the batch: commands check what they need
+ *  before they change anything, so the repository is as it was.  merge,
+ *  push, fetch and pull may fail having changed it (a fast-forward merge
+ *  is reported that way), so the batch saves before each of them and
+ *  reads the repository again if it fails, as if it had been run alone.
+ *  If a save itself fails, at a checkpoint or before one of these (a ref
+ *  was locked or moved by another command), the repository is read again
+ *  from what is on disk, dropping the commands since the last save that
+ *  succeeded, and the command is reported failed with the reason.  Any
+ *  other exception stops the batch, saving nothing after the last
+ *  checkpoint.
+ *  @author Jenna Jang
+ */
+class Batch {
+
+    /** Commands that may change the repository before they fail. */
+    private static final Set<String> UNSAFE =
+        Set.of("merge", "push", "fetch", "pull");
+
+    /** Runs the batch ARGS ("batch [-z] [FILE]") on METHODS, the
+     *  repository in the current directory or null if there is none.
+     * @param methods
+     * @param args */
+    static void main(Methods methods, String... args) throws IOException {
+        if (methods == null) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        int delimiter = '\n';
+        int next = 1;
+        if (next < args.length && args[next].equals("-z")) {
+            delimiter = 0;
+            next += 1;
+        }
+        if (args.length > next + 1) {
+            throw Utils.error("Incorrect operands.");
+        }
+        InputStream in;
+        if (next < args.length) {
+            try {
+                in = new FileInputStream(args[next]);
+            } catch (IOException excp) {
+                throw Utils.error("File does not exist.");
+            }
+        } else {
+            in = System.in;
+        }
+        try (InputStream input = new BufferedInputStream(in)) {
+            new Batch(methods).run(input, delimiter);
+        }
+    }
+
+    /** A batch run on the repository METHODS. */
+    private Batch(Methods methods) {
+        _Repo = methods;
+    }
+
+    /** Runs every command read from IN, each ended by DELIMITER, saving
+     *  at checkpoints and at the end. */
+    private void run(InputStream in, int delimiter) throws IOException {
+        long start = System.nanoTime();
+        int line = 0, commands = 0, failed = 0;
+        for (String command = read(in, delimiter); command != null;
+             command = read(in, delimiter)) {
+            line += 1;
+            if (command.isBlank() || command.strip().startsWith("#")) {
+                continue;
+            }
+            String[] args;
+            try {
+                args = split(command);
+            } catch (GitletException excp) {
+                report(line, "?", 0, excp.getMessage());
+                commands += 1;
+                failed += 1;
+                continue;
+            }
+            commands += 1;
+            long begin = System.nanoTime();
+            String error = execute(args);
+            report(line, args[0], System.nanoTime() - begin, error);
+            if (error != null) {
+                failed += 1;
+            }
+        }
+        long saving = System.nanoTime();
+        _Repo.save();
+        long end = System.nanoTime();
+        System.out.printf("<<< %d commands, %d failed: %.2f ms,"
+                + " saved in %.2f ms%n", commands, failed,
+                (end - start) / 1e6, (end - saving) / 1e6);
+    }
+
+    /** Runs the command ARGS, and returns null if it succeeded and
+     *  otherwise why it failed. */
+    private String execute(String... args) throws IOException {
+        boolean checkpoint = args[0].equals("checkpoint");
+        if (checkpoint && args.length != 1) {
+            return "Incorrect operands.";
+        }
+        boolean saving = checkpoint || UNSAFE.contains(args[0]);
+        try {
+            if (saving) {
+                _Repo.save();
+                saving = false;
+            }
+            if (checkpoint) {
+                return null;
+            }
+            Main.dispatch(_Repo, args);
+            _Repo.endCommand();
+            return null;
+        } catch (GitletException excp) {
+            if (saving || UNSAFE.contains(args[0])) {
+                _Repo = Methods.load(Utils.join(".gitlet"));
+            } else {
+                _Repo.endCommand();
+            }
+            return excp.getMessage() == null ? "" : excp.getMessage();
+        } catch (RuntimeException excp) {
+            System.out.flush();
+            throw Utils.error("%s failed with %s; the batch is stopped and"
+                    + " nothing after the last checkpoint is saved.",
+                    args[0], excp);
+        }
+    }
+
+    /** Prints the result of the command NAME on LINE, which took NANOS
+     *  and failed with the message ERROR unless it is null. */
+    private static void report(int line, String name, long nanos,
+                               String error) {
+        System.out.printf("<<< %d %s: %s %.2f ms%s%n", line, name,
+                error == null ? "ok" : "failed", nanos / 1e6,
+                error == null || error.isEmpty() ? "" : ": " + error);
+    }
+
+    /** Returns the next command read from IN, up to DELIMITER or the end
+     *  of IN, or null if IN is at its end.
+     * @param in
+     * @param delimiter */
+    static String read(InputStream in, int delimiter) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != delimiter) {
+            record.write(b);
+        }
+        if (b == -1 && record.size() == 0) {
+            return null;
+        }
+        String result = record.toString(StandardCharsets.UTF_8);
+        if (delimiter == '\n' && result.endsWith("\r")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    /** Returns the arguments of COMMAND, split at whitespace outside of
+     *  quotes.
+     * @param command */
+    static String[] split(String command) {
+        ArrayList<String> args = new ArrayList<String>();
+        StringBuilder arg = null;
+        char quote = 0;
+        for (int i = 0; i < command.length(); i += 1) {
+            char c = command.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (arg != null) {
+                    args.add(arg.toString());
+                    arg = null;
+                }
+                continue;
+            }
+            if (arg == null) {
+                arg = new StringBuilder();
+            }
+            if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else if (c == '\\' && quote == '"'
+                       && i + 1 < command.length()) {
+                i += 1;
+                arg.append(command.charAt(i));
+            } else {
+                arg.append(c);
+            }
+        }
+        if (quote != 0) {
+            throw Utils.error("Unterminated quote.");
+        }
+        if (arg != null) {
+            args.add(arg.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** The repository, as the commands so far left it. */
+    private Methods _Repo;
+}
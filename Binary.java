@@ -0,0 +1,217 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The binary format of the commits, the stage and the remotes, which
+ *  replaces Java serialization.  An encoding starts with four bytes naming
+ *  what it holds and a version number; numbers are unsigned LEB128
+ *  varints, strings their length in bytes as a varint and then their
+ *  UTF-8, and hashes their 20 bytes.  There are no class descriptors and
+ *  no object graph, so an encoding is a fraction of the size of the
+ *  serialized object and is read in one pass without reflection.  Bytes
+ *  starting with the serialization magic 0xACED are the old format, still
+ *  read so that repositories work before they are migrated.
+ *  @author Jenna Jang
+ */
+class Binary {
+
+    /** First two bytes of a serialized Java object. */
+    private static final int SERIALIZED = 0xACED;
+
+    /** Returns true iff DATA is a serialized Java object.
+     * @param data */
+    static boolean serialized(byte[] data) {
+        return data.length >= 2
+            && ((data[0] & 0xff) << 8 | (data[1] & 0xff)) == SERIALIZED;
+    }
+
+    /** Returns the object serialized in DATA, which must be a TYPE.
+     * @param data
+     * @param type */
+    static <T extends Serializable> T deserialize(byte[] data,
+                                                  Class<T> type) {
+        try (ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return type.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Builds an encoding. */
+    static class Writer {
+
+        /** An encoding of the kind MAGIC, VERSION of its format.
+         * @param magic
+         * @param version */
+        Writer(String magic, int version) {
+            for (int i = 0; i < 4; i += 1) {
+                byte1(magic.charAt(i));
+            }
+            varint(version);
+        }
+
+        /** Writes the unsigned number N.
+         * @param n */
+        Writer varint(long n) {
+            while ((n & ~0x7fL) != 0) {
+                byte1((int) (n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            byte1((int) n);
+            return this;
+        }
+
+        /** Writes the string S.
+         * @param s */
+        Writer string(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, _Data, _Size, bytes.length);
+            _Size += bytes.length;
+            return this;
+        }
+
+        /** Writes the 40-digit hexadecimal HASH as its 20 bytes.
+         * @param hash */
+        Writer hash(String hash) {
+            byte[] bytes = Utils.fromHex(hash);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, _Data, _Size, bytes.length);
+            _Size += bytes.length;
+            return this;
+        }
+
+        /** Writes the number of entries of MAP and then each key as a
+         *  string and value as a hash, in no particular order.
+         * @param map */
+        Writer hashes(Map<String, String> map) {
+            varint(map.size());
+            for (Map.Entry<String, String> e : map.entrySet()) {
+                string(e.getKey()).hash(e.getValue());
+            }
+            return this;
+        }
+
+        /** Returns the bytes written. */
+        byte[] toByteArray() {
+            return Arrays.copyOf(_Data, _Size);
+        }
+
+        /** Writes the low byte of B. */
+        private void byte1(int b) {
+            ensure(1);
+            _Data[_Size++] = (byte) b;
+        }
+
+        /** Makes room for N more bytes. */
+        private void ensure(int n) {
+            if (_Size + n > _Data.length) {
+                _Data = Arrays.copyOf(_Data,
+                        Math.max(_Data.length * 2, _Size + n));
+            }
+        }
+
+        /** The bytes written, and more. */
+        private byte[] _Data = new byte[64];
+        /** Number of bytes written. */
+        private int _Size;
+    }
+
+    /** Reads an encoding. */
+    static class Reader {
+
+        /** Reads DATA, which must be an encoding of the kind MAGIC in a
+         *  version of its format no later than VERSION.
+         * @param data
+         * @param magic
+         * @param version */
+        Reader(byte[] data, String magic, int version) {
+            _Data = data;
+            for (int i = 0; i < 4; i += 1) {
+                if (_Pos >= data.length || data[_Pos++] != magic.charAt(i)) {
+                    throw new IllegalArgumentException("not a " + magic
+                            + " encoding");
+                }
+            }
+            _Version = (int) varint();
+            if (_Version > version) {
+                throw new IllegalArgumentException("unsupported " + magic
+                        + " version " + _Version);
+            }
+        }
+
+        /** Returns the version of the format of the encoding. */
+        int version() {
+            return _Version;
+        }
+
+        /** Returns the next unsigned number. */
+        long varint() {
+            long result = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = next(1);
+                result |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+        }
+
+        /** Returns the next string. */
+        String string() {
+            int length = (int) varint();
+            next(length);
+            return new String(_Data, _Pos - length, length,
+                    StandardCharsets.UTF_8);
+        }
+
+        /** Returns the next hash, in hexadecimal. */
+        String hash() {
+            next(CommitGraph.HASH_BYTES);
+            char[] hex = new char[2 * CommitGraph.HASH_BYTES];
+            for (int i = 0, at = _Pos - CommitGraph.HASH_BYTES;
+                 i < CommitGraph.HASH_BYTES; i += 1, at += 1) {
+                hex[2 * i] = Character.forDigit(_Data[at] >> 4 & 0xf, 16);
+                hex[2 * i + 1] = Character.forDigit(_Data[at] & 0xf, 16);
+            }
+            return new String(hex);
+        }
+
+        /** Returns the next map written by Writer.hashes. */
+        HashMap<String, String> hashes() {
+            int n = (int) varint();
+            HashMap<String, String> result = new HashMap<String, String>(
+                    Math.max(16, n * 4 / 3 + 1));
+            for (; n > 0; n -= 1) {
+                result.put(string(), hash());
+            }
+            return result;
+        }
+
+        /** Steps over the next N bytes and returns the first of them. */
+        private byte next(int n) {
+            if (n < 0 || n > _Data.length - _Pos) {
+                throw new IllegalArgumentException("truncated encoding");
+            }
+            _Pos += n;
+            return n == 0 ? 0 : _Data[_Pos - n];
+        }
+
+        /** The encoding. */
+        private byte[] _Data;
+        /** Offset of the next byte to read. */
+        private int _Pos;
+        /** Version of the format of the encoding. */
+        private int _Version;
+    }
+}
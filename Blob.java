@@ -1,18 +1,30 @@
 package gitlet;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 /** Class that stores the hash id and the content of the file.
+ *  The hash id depends on the content alone, so identical files share
+ *  one stored copy whatever their names and however many commits use them.
  *  @author Jenna Jang
  */
 
 public class Blob implements Serializable {
 
+    /** Kept fixed so serialized stages and commits can still be read. */
+    private static final long serialVersionUID = 3097909029306664567L;
+
     /** Hash of the blob. */
     private String _Hash;
-    /** Content of the blob. */
-    private String _Content;
+    /** Content of the blob, read from the object store on first use. */
+    private transient String _Content;
+    /** Object store the content is kept in. */
+    private transient ObjectStore _Store;
 
     /** Returns hash( in blob). */
     public String hash() {
@@ -21,16 +33,63 @@ public class Blob implements Serializable {
 
     /** Returns content( in blob) . */
     public String content() {
+        if (_Content == null && _Store != null) {
+            _Content = new String(_Store.get(_Hash), StandardCharsets.UTF_8);
+        }
         return _Content;
     }
 
-    /** takes in file and stores hash id
-     * and content of the FILE.
+    /** Reads the content from STORE from now on.
+     * @param store */
+    void setStore(ObjectStore store) {
+        _Store = store;
+    }
+
+    /** takes in file and stores hash id of the FILE.
+     * The file is streamed through the digest, never held in memory.
      */
     public Blob(File file) {
-        String content = Utils.readContentsAsString(file);
-        _Hash = Utils.sha1(file.getName() + content);
-        _Content = content;
+        _Hash = hashOf(file);
+    }
+
+    /** Streams FILE into STORE, computing its hash id on the way.
+     * Memory use does not depend on the size of the file.
+     * @param file
+     * @param store */
+    Blob(File file, ObjectStore store) {
+        _Hash = store.putFile(file);
+        _Store = store;
+    }
+
+    /** The blob HASH, whose content is already in STORE.
+     * @param hash
+     * @param store */
+    Blob(String hash, ObjectStore store) {
+        _Hash = hash;
+        _Store = store;
+    }
+
+    /** Returns the hash id of FILE, read in chunks of
+     * Utils.CHUNK_SIZE bytes.
+     * @param file */
+    static String hashOf(File file) {
+        MessageDigest md = Utils.sha1Digest();
+        byte[] chunk = Utils.chunk();
+        try (InputStream in = new FileInputStream(file)) {
+            for (int n = in.read(chunk); n > 0; n = in.read(chunk)) {
+                md.update(chunk, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.toHex(md.digest());
+    }
+
+    /** Writes the exact bytes of the blob to FILE, streaming them from
+     * the object store.
+     * @param file */
+    public void writeTo(File file) {
+        _Store.copyTo(_Hash, file);
     }
 
     /** Returns true blob content is same or not.
@@ -1,8 +1,6 @@
 package gitlet;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashMap;
 
 
 /** Class for Branches.
@@ -12,35 +10,25 @@ import java.util.HashMap;
 
 public class Branch implements Serializable {
 
+    /** Version of the form in which branches used to be saved, kept so
+     *  that old refs can still be read and converted. */
+    private static final long serialVersionUID = 4433516898445193018L;
 
     /** branch. */
     private String _Name;
 
-    /** Head commit (branch). */
-    private Commit _Head;
+    /** Hash of the head commit (branch). */
+    private String _HeadHash;
 
-    /** All removed files (branch). */
-    private HashMap<String, Blob> _Removed;
+    /** Head commit (branch), read from the object store on first use. */
+    private transient Commit _Head;
 
-    /** Returns all the removed files (branch). */
-    public HashMap<String, Blob> removed() {
-        return _Removed;
-    }
-
-    /** Add the filename and blob to the removed list.
-     * @param fileName
-     * @param blob
-     * */
-    public void plusRemoved(String fileName, Blob blob) {
-        _Removed.put(fileName, blob);
-    }
+    /** Object store the commits of the branch are kept in. */
+    private transient ObjectStore _Store;
 
-    /** Remove the filenmae from the removed list.
-     * @param fileName
-     * */
-    public void rmFrrm(String fileName) {
-        _Removed.remove(fileName);
-    }
+    /** Hash of the head commit as last read or saved, or null for a new
+     *  branch. */
+    private transient String _SavedHash;
 
     /** The name of the branch.
      * @return name
@@ -53,16 +41,52 @@ public class Branch implements Serializable {
      * @return head
      * */
     public Commit head() {
+        if (_Head == null && _Store != null) {
+            _Head = _Store.getCommit(_HeadHash);
+        }
         return _Head;
     }
 
+    /** Returns the hash of the head commit of the branch. */
+    public String headHash() {
+        return _HeadHash;
+    }
+
+    /** Returns the hash of the head commit as last read or saved, or null
+     *  if the branch has not been saved. */
+    String savedHash() {
+        return _SavedHash;
+    }
+
+    /** Records that the branch was just read or saved as it is. */
+    void markSaved() {
+        _SavedHash = _HeadHash;
+    }
+
+    /** Resolves the head commit from STORE from now on.
+     * @param store */
+    void setStore(ObjectStore store) {
+        _Store = store;
+    }
+
     /** Stores the name and head commit.
      * @param name
      * @param head*/
     public Branch(String name, Commit head) {
         _Name = name;
-        _Head = head;
-        _Removed = new HashMap<String, Blob>();
+        gvCommtoHead(head);
+    }
+
+    /** A branch NAME, saved with head HEADHASH, whose commits are kept in
+     *  STORE.
+     * @param name
+     * @param headHash
+     * @param store */
+    Branch(String name, String headHash, ObjectStore store) {
+        _Name = name;
+        _HeadHash = headHash;
+        _Store = store;
+        markSaved();
     }
 
     /** Set the head commit of the branch with that input (commit).
@@ -70,18 +94,10 @@ public class Branch implements Serializable {
      * */
     public void gvCommtoHead(Commit commit) {
         _Head = commit;
-    }
-
-    /** Returns all the hashs the branch has. */
-    public ArrayList<String> rtAllHash() {
-        Commit arrow = _Head;
-        ArrayList<String> evHash = new ArrayList<String>();
-        while (arrow != null) {
-            String hash = arrow.getHash();
-            evHash.add(hash);
-            arrow = arrow.getParent();
+        _HeadHash = commit.getHash();
+        if (commit.store() != null) {
+            _Store = commit.store();
         }
-        return evHash;
     }
 }
 
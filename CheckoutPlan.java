@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/** What a checkout or reset will do to the working directory, worked out
+ *  in full before any file is touched: the paths to delete and the blob
+ *  to write at each other changed path, with the time each phase took.
+ *  @author Jenna Jang
+ */
+class CheckoutPlan {
+
+    /** Phases of a checkout, in order. */
+    static final String[] PHASES = { "resolve", "plan", "apply" };
+
+    /** Plans to delete PATH.
+     * @param path */
+    void delete(String path) {
+        _Deletions.add(path);
+    }
+
+    /** Plans to write the blob HASH at PATH.
+     * @param path
+     * @param hash */
+    void write(String path, String hash) {
+        _Writes.put(path, hash);
+    }
+
+    /** Drops the write planned at PATH, whose file already holds its blob.
+     * @param path */
+    void skip(String path) {
+        if (_Writes.remove(path) != null) {
+            _Skipped += 1;
+        }
+    }
+
+    /** Returns the paths to delete, in order. */
+    List<String> deletions() {
+        return _Deletions;
+    }
+
+    /** Returns the blob to write at each path, by path. */
+    TreeMap<String, String> writes() {
+        return _Writes;
+    }
+
+    /** Records that phase PHASE, an index into PHASES, took NANOS
+     *  nanoseconds.
+     * @param phase
+     * @param nanos */
+    void time(int phase, long nanos) {
+        _Nanos[phase] = nanos;
+    }
+
+    /** Returns a report of the work planned and the time each phase
+     *  took, done on THREADS threads. */
+    String report(int threads) {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%d written, %d deleted, %d already"
+                + " current, %d threads%n", _Writes.size(),
+                _Deletions.size(), _Skipped, threads));
+        for (int i = 0; i < PHASES.length; i += 1) {
+            result.append(String.format("%-8s %9.3f ms%n", PHASES[i],
+                    _Nanos[i] / 1e6));
+        }
+        return result.toString();
+    }
+
+    /** Paths to delete. */
+    private ArrayList<String> _Deletions = new ArrayList<String>();
+    /** Blob to write at each path. */
+    private TreeMap<String, String> _Writes = new TreeMap<String, String>();
+    /** Number of writes dropped because the file was current. */
+    private int _Skipped;
+    /** Nanoseconds taken by each phase. */
+    private long[] _Nanos = new long[PHASES.length];
+}
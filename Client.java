@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/** The thin client of Daemon, which may be invoked as
+ *      java gitlet.Client ARGS
+ *  wherever java gitlet.Main ARGS would be.  It sends ARGS to the daemon
+ *  of the repository in the current directory and prints its reply, or,
+ *  if no daemon is running there, runs the command itself as Main.  A
+ *  request is the number of arguments as an int, then each in modified
+ *  UTF-8 as DataOutputStream writes it; the reply is the output of the
+ *  command, up to the end of the connection.
+ *  @author Jenna Jang
+ */
+public class Client {
+
+    /** Runs the command ARGS through the daemon, if there is one.  A
+     *  batch, which reads its own input, always runs here. */
+    public static void main(String... args) throws IOException {
+        if (args.length > 0 && args[0].equals("batch")) {
+            Main.main(args);
+            return;
+        }
+        byte[] reply = send(Daemon.SOCKET, args);
+        if (reply == null) {
+            Main.main(args);
+        } else {
+            System.out.write(reply);
+            System.out.flush();
+        }
+    }
+
+    /** Returns the reply of the daemon listening on SOCKET to the command
+     *  ARGS, or null if no daemon is listening there.
+     * @param socket
+     * @param args */
+    static byte[] send(String socket, String... args) throws IOException {
+        try (SocketChannel channel =
+                SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            try {
+                channel.connect(UnixDomainSocketAddress.of(Path.of(socket)));
+            } catch (IOException excp) {
+                return null;
+            }
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            channel.shutdownOutput();
+            InputStream in = Channels.newInputStream(channel);
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            in.transferTo(reply);
+            return reply.toByteArray();
+        }
+    }
+
+    /** Returns the arguments of a request read from IN.
+     * @param in */
+    static String[] readArgs(DataInputStream in) throws IOException {
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        return args;
+    }
+}
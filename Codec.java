@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A way of compressing the objects of an object store.  Each object
+ *  records the id of the codec it was written with, so a repository can
+ *  change codecs without rewriting its objects.
+ *  @author Jenna Jang
+ */
+abstract class Codec {
+
+    /** Objects stored as they are. */
+    static final Codec NONE = new Codec(0, "none") {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return in;
+        }
+    };
+
+    /** Objects compressed with java.util.zip, favoring size. */
+    static final Codec DEFLATE = new Codec(1, "deflate") {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return new DeflaterOutputStream(out, true);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    };
+
+    /** Objects compressed with LzCodec, favoring speed. */
+    static final Codec LZ = new Codec(2, "lz") {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return new LzCodec.Output(out);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return new LzCodec.Input(in);
+        }
+    };
+
+    /** Every codec, indexed by id. */
+    private static final Codec[] CODECS = { NONE, DEFLATE, LZ };
+
+    /** A codec named NAME whose objects are marked with ID. */
+    Codec(int id, String name) {
+        _Id = (byte) id;
+        _Name = name;
+    }
+
+    /** Returns the id recorded in the objects this codec writes. */
+    byte id() {
+        return _Id;
+    }
+
+    /** Returns the name used for this codec in .gitlet/config. */
+    String name() {
+        return _Name;
+    }
+
+    /** Returns a stream that compresses what is written to it into OUT.
+     *  Closing it closes OUT. */
+    abstract OutputStream compress(OutputStream out) throws IOException;
+
+    /** Returns a stream of the decompressed bytes read from IN.  Closing
+     *  it closes IN. */
+    abstract InputStream decompress(InputStream in) throws IOException;
+
+    /** Returns the codec called NAME, or null if there is none.
+     * @param name */
+    static Codec forName(String name) {
+        for (Codec codec : CODECS) {
+            if (codec.name().equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the codec whose id is ID.
+     * @param id */
+    static Codec forId(int id) {
+        if (id < 0 || id >= CODECS.length) {
+            throw new IllegalArgumentException("unknown codec " + id);
+        }
+        return CODECS[id];
+    }
+
+    /** Returns every codec. */
+    static Codec[] all() {
+        return CODECS.clone();
+    }
+
+    /** Id recorded in objects. */
+    private byte _Id;
+    /** Name in .gitlet/config. */
+    private String _Name;
+}
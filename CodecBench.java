@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** A benchmark comparing the object codecs, which may be invoked as
+ *      java gitlet.CodecBench [MEGABYTES]
+ *  For a text-heavy and a binary-heavy corpus of about MEGABYTES MB each
+ *  (default 32), it stores every file in a fresh object store per codec
+ *  and reports the store size on disk, the ingest rate, and the rate at
+ *  which the blobs are checked out again into a worktree.
+ *  @author Jenna Jang
+ */
+public class CodecBench {
+
+    /** Size of each generated file. */
+    private static final int FILE_SIZE = 256 * 1024;
+
+    /** Times each checkout pass is repeated. */
+    private static final int ROUNDS = 3;
+
+    /** Runs the benchmark; ARGS may give the corpus size in MB. */
+    public static void main(String... args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        File root = Files.createTempDirectory("gitlet-bench").toFile();
+        try {
+            File text = corpus(new File(root, "text"), megabytes, true);
+            File binary = corpus(new File(root, "binary"), megabytes, false);
+            System.out.printf("%-8s %-7s %12s %8s %12s %12s%n", "corpus",
+                    "codec", "stored", "ratio", "ingest MB/s",
+                    "checkout MB/s");
+            for (File corpus : new File[] { text, binary }) {
+                for (Codec codec : Codec.all()) {
+                    run(root, corpus, codec);
+                }
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** Stores every file of CORPUS with CODEC in a repository under ROOT,
+     *  checks them all out again, and prints the results. */
+    private static void run(File root, File corpus, Codec codec)
+        throws IOException {
+        File repo = new File(root, "repo-" + codec.name());
+        repo.mkdirs();
+        Config config = new Config(repo);
+        config.set(Config.COMPRESSION, codec.name());
+        ObjectStore store = new ObjectStore(repo, config);
+        store.create();
+        File[] files = corpus.listFiles();
+        long raw = 0;
+        long start = System.nanoTime();
+        List<Blob> blobs = new ArrayList<>();
+        for (File file : files) {
+            blobs.add(new Blob(file, store));
+            raw += file.length();
+        }
+        double ingest = rate(raw, System.nanoTime() - start);
+        File worktree = new File(root, "worktree");
+        worktree.mkdirs();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round += 1) {
+            start = System.nanoTime();
+            for (int i = 0; i < blobs.size(); i += 1) {
+                blobs.get(i).writeTo(new File(worktree, files[i].getName()));
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long stored = store.usage()[1];
+        System.out.printf("%-8s %-7s %12d %8.3f %12.1f %12.1f%n",
+                corpus.getName(), codec.name(), stored,
+                (double) stored / raw, ingest, rate(raw, best));
+        delete(worktree);
+        delete(repo);
+    }
+
+    /** Returns a directory DIR filled with about MEGABYTES MB of
+     *  generated files: log-like lines of words if TEXT, otherwise
+     *  random bytes mixed with repeated binary records. */
+    private static File corpus(File dir, int megabytes, boolean text)
+        throws IOException {
+        dir.mkdirs();
+        Random random = new Random(61);
+        String[] words = { "commit", "merge", "branch", "INFO", "WARN",
+            "request", "served", "in", "ms", "user", "id", "status",
+            "ok", "error", "retry", "cache", "hit", "miss", "config" };
+        int count = Math.max(1, megabytes * 1024 * 1024 / FILE_SIZE);
+        for (int f = 0; f < count; f += 1) {
+            byte[] data = new byte[FILE_SIZE];
+            if (text) {
+                StringBuilder lines = new StringBuilder();
+                while (lines.length() < FILE_SIZE) {
+                    lines.append(random.nextInt(100000)).append(' ');
+                    for (int w = 3 + random.nextInt(8); w > 0; w -= 1) {
+                        lines.append(words[random.nextInt(words.length)])
+                            .append(' ');
+                    }
+                    lines.append('\n');
+                }
+                byte[] bytes = lines.toString().getBytes();
+                System.arraycopy(bytes, 0, data, 0, FILE_SIZE);
+            } else {
+                random.nextBytes(data);
+                byte[] record = new byte[64];
+                random.nextBytes(record);
+                for (int i = 0; i + 64 < FILE_SIZE; i += 256) {
+                    System.arraycopy(record, 0, data, i, 64);
+                }
+            }
+            Utils.writeContents(new File(dir, "f" + f), data);
+        }
+        return dir;
+    }
+
+    /** Returns BYTES per NANOS as MB/s. */
+    private static double rate(long bytes, long nanos) {
+        return bytes / 1048576.0 / (nanos / 1e9);
+    }
+
+    /** Deletes FILE and everything under it. */
+    private static void delete(File file) throws IOException {
+        try (Stream<java.nio.file.Path> paths = Files.walk(file.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        }
+    }
+}
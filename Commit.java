@@ -8,6 +8,8 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
 
 
 /**
@@ -15,36 +17,59 @@ import java.util.Map;
  */
 public class Commit implements Serializable {
 
+    /** Kept fixed so commits written before trees can still be read. */
+    private static final long serialVersionUID = -4386260017735025059L;
+
+    /** Kind of encoding of a commit (see Binary.java). */
+    private static final String FORMAT = "GLCM";
+    /** Latest version of the encoding of a commit.  Version 2 adds the
+     *  time in milliseconds. */
+    private static final int VERSION = 2;
+    /** Flags of the optional fields of an encoded commit. */
+    private static final int PARENT = 1, TREE = 2, BLOBS = 4;
 
     /** Commit message. */
     private String _Message;
     /** Commit timestamp. */
     private String _Timestamp;
-    /** Commit parent. */
-    private Commit _Parent;
-    /** Commit blobs. */
+    /** Time the commit was made, in milliseconds since the epoch, or 0 if
+     *  it was made before this was kept. */
+    private long _Millis;
+    /** Hash of the commit parent. */
+    private String _ParentHash;
+    /** Object store the commit is kept in. */
+    private transient ObjectStore _Store;
+    /** Hash of the tree of the files, or null if there are none. */
+    private String _Tree;
+    /** Commit blobs, in a commit written before trees; null otherwise. */
     private HashMap<String, Blob> _Blobs;
+    /** Every file of the commit, read from the tree on first use and
+     *  otherwise made from the snapshot of the parent. */
+    private transient Snapshot _Snapshot;
     /** Commit hash. */
     private String _Hash;
 
 
-    /** Takes in commit message, parent blobs to get timestamp.
+    /** Takes in commit message, parent to get timestamp.
+     * The commit tracks no files.
      * @param message
      * @param parent
-     * @param blobs
      */
-    public Commit(String message, Commit parent, HashMap<String, Blob> blobs) {
+    public Commit(String message, Commit parent) {
         _Message = message;
-        _Blobs = blobs;
-        _Parent = parent;
+        setParent(parent);
         _Timestamp = "Thu Jan 01 00:00:00 1970 -0800";
         setHash(_Message + _Timestamp);
     }
 
+    /** A commit whose fields are set by decode. */
+    private Commit() {
+    }
+
     /** A commit whose initial contents and state are copied from
      *  the PARENT commit. */
     Commit(Commit parent) {
-        this(null, null, null);
+        this(null, null);
         commithelper(parent);
     }
 
@@ -52,14 +77,105 @@ public class Commit implements Serializable {
      * Referenced LOA's copyFrom method. */
     void commithelper(Commit parent) {
         _Message = parent.getMessage();
-        _Parent = parent.getParent();
-        _Blobs = parent.getBlobs();
-        SimpleDateFormat time =
-                new SimpleDateFormat("EEE MMM d hh:mm:ss yyyy Z");
-        _Timestamp = time.format(new Date());
+        _ParentHash = parent._ParentHash;
+        _Store = parent._Store;
+        _Tree = parent._Tree;
+        _Blobs = parent._Blobs;
+        _Snapshot = parent._Snapshot;
+        setMillis(System.currentTimeMillis());
         _Hash = parent.getHash();
     }
 
+    /** Sets the time of the commit to MILLIS since the epoch. */
+    private void setMillis(long millis) {
+        SimpleDateFormat time =
+                new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
+        _Millis = millis;
+        _Timestamp = time.format(new Date(millis));
+    }
+
+    /** Sets my hash to the SHA-1 of my content: my parent, my tree (or
+     *  files), my message and my time to the millisecond.  If STORE
+     *  already holds an object of that hash, my time is moved on a
+     *  millisecond at a time until it does not, so no two commits made
+     *  in one repository share an id.
+     * @param store */
+    void seal(ObjectStore store) {
+        while (true) {
+            _Hash = Utils.sha1(write(new Binary.Writer(FORMAT, VERSION),
+                                     false).toByteArray());
+            if (!store.contains(_Hash)) {
+                return;
+            }
+            setMillis(_Millis + 1);
+        }
+    }
+
+    /** Returns my encoding: a varint of flags saying which of the parent,
+     *  tree and (before trees) file map there are, the message, the
+     *  timestamp, the time in milliseconds, my hash, then those of the
+     *  three there are. */
+    byte[] encode() {
+        return write(new Binary.Writer(FORMAT, VERSION), true).toByteArray();
+    }
+
+    /** Writes my encoding to OUT, without my hash unless HASH, and
+     *  returns OUT. */
+    private Binary.Writer write(Binary.Writer out, boolean hash) {
+        out.varint((_ParentHash != null ? PARENT : 0)
+                   | (_Tree != null ? TREE : 0)
+                   | (_Blobs != null ? BLOBS : 0));
+        out.string(_Message).string(_Timestamp).varint(_Millis);
+        if (hash) {
+            out.hash(_Hash);
+        }
+        if (_ParentHash != null) {
+            out.hash(_ParentHash);
+        }
+        if (_Tree != null) {
+            out.hash(_Tree);
+        }
+        if (_Blobs != null) {
+            HashMap<String, String> paths = new HashMap<String, String>();
+            for (Map.Entry<String, Blob> i : _Blobs.entrySet()) {
+                paths.put(i.getKey(), i.getValue().hash());
+            }
+            out.hashes(paths);
+        }
+        return out;
+    }
+
+    /** Returns the commit encoded in DATA, or serialized in it if it was
+     *  written before the encoding.
+     * @param data */
+    static Commit decode(byte[] data) {
+        if (Binary.serialized(data)) {
+            return Binary.deserialize(data, Commit.class);
+        }
+        Binary.Reader in = new Binary.Reader(data, FORMAT, VERSION);
+        Commit result = new Commit();
+        int flags = (int) in.varint();
+        result._Message = in.string();
+        result._Timestamp = in.string();
+        if (in.version() >= 2) {
+            result._Millis = in.varint();
+        }
+        result._Hash = in.hash();
+        if ((flags & PARENT) != 0) {
+            result._ParentHash = in.hash();
+        }
+        if ((flags & TREE) != 0) {
+            result._Tree = in.hash();
+        }
+        if ((flags & BLOBS) != 0) {
+            result._Blobs = new HashMap<String, Blob>();
+            for (Map.Entry<String, String> i : in.hashes().entrySet()) {
+                result._Blobs.put(i.getKey(), new Blob(i.getValue(), null));
+            }
+        }
+        return result;
+    }
+
     /** Returns the timestamp (commit). */
     public String getTimestamp() {
         return _Timestamp;
@@ -70,14 +186,106 @@ public class Commit implements Serializable {
         return _Message;
     }
 
-    /** Returns the parents (commit). */
+    /** Returns the parents (commit), resolved through the commit cache
+     *  of the object store rather than held, so a commit never keeps its
+     *  ancestry in memory. */
     public Commit getParent() {
-        return _Parent;
+        if (_ParentHash == null || _Store == null) {
+            return null;
+        }
+        return _Store.getCommit(_ParentHash);
+    }
+
+    /** Returns the hash of the parent (commit), or null for the initial
+     *  commit. */
+    public String getParentHash() {
+        return _ParentHash;
     }
 
-    /** Returns the blob (commit). */
-    public HashMap<String, Blob> getBlobs() {
-        return _Blobs;
+    /** Returns the object store this commit is kept in. */
+    ObjectStore store() {
+        return _Store;
+    }
+
+    /** Resolves the parent from STORE from now on.
+     * @param store */
+    void setStore(ObjectStore store) {
+        _Store = store;
+    }
+
+    /** Returns the hash of the tree of the files, or null if the commit
+     *  has none yet. */
+    String tree() {
+        return _Tree;
+    }
+
+    /** Returns every file of the commit.  The whole tree is read the
+     *  first time; whereBlob reads only the trees on one path. */
+    Snapshot snapshot() {
+        if (_Snapshot == null && _Tree != null) {
+            HashMap<String, String> paths = new HashMap<String, String>();
+            Tree.flatten(_Store, _Tree, "", paths);
+            _Snapshot = Snapshot.of(paths);
+        } else if (_Snapshot == null && _Blobs != null) {
+            HashMap<String, String> paths = new HashMap<String, String>();
+            for (Map.Entry<String, Blob> i : _Blobs.entrySet()) {
+                paths.put(i.getKey(), i.getValue().hash());
+            }
+            _Snapshot = Snapshot.of(paths);
+        } else if (_Snapshot == null) {
+            _Snapshot = Snapshot.EMPTY;
+        }
+        return _Snapshot;
+    }
+
+    /** Makes CHANGES, each path mapped to its new blob or to null if the
+     *  file is gone, to the files copied from the parent.  Only the trees
+     *  on the changed paths are written to my store, and if the snapshot
+     *  of the parent is in memory, only the changed paths are copied from
+     *  it; otherwise mine is read from the tree when first used.
+     * @param changes */
+    void change(Map<String, String> changes) {
+        String base = _Tree;
+        if (base == null && _Blobs != null) {
+            base = Tree.build(_Store, null, snapshot().toMap());
+        }
+        if (_Snapshot != null) {
+            _Snapshot = _Snapshot.with(changes);
+        }
+        _Tree = Tree.build(_Store, base, changes);
+        _Blobs = null;
+    }
+
+    /** Reports to CHANGE every file that differs between this commit and
+     *  OTHER.  Directories the two commits share are not read.
+     * @param other
+     * @param change */
+    void diff(Commit other, Tree.Change change) {
+        if ((_Tree != null || _Blobs == null)
+                && (other._Tree != null || other._Blobs == null)) {
+            Tree.diff(_Store, _Tree, other._Tree, "", change);
+            return;
+        }
+        Snapshot mine = snapshot(), theirs = other.snapshot();
+        TreeSet<String> names = mine.paths();
+        names.addAll(theirs.paths());
+        for (String name : names) {
+            String before = mine.get(name), after = theirs.get(name);
+            if (!Objects.equals(before, after)) {
+                change.changed(name, before, after);
+            }
+        }
+    }
+
+    /** Copies my tree and the blobs under it to the store TO, skipping
+     *  any directory TO already holds.
+     * @param to */
+    void copyFiles(ObjectStore to) {
+        if (_Tree != null) {
+            Tree.copy(_Store, to, _Tree);
+        } else {
+            snapshot().forEach((path, blob) -> to.copyFrom(_Store, blob));
+        }
     }
 
     /** Returns the hash (commit). */
@@ -96,17 +304,14 @@ public class Commit implements Serializable {
         _Timestamp = getTimestamp();
     }
 
-    /** Commit blob to the given blobs.
-     * @param blobs */
-    public void setBlobs(HashMap<String, Blob> blobs) {
-        this._Blobs = blobs;
-    }
-
 
     /** Commit parent to the given parent.
      * @param parent */
     public void setParent(Commit parent) {
-        this._Parent = parent;
+        this._ParentHash = parent == null ? null : parent.getHash();
+        if (parent != null && _Store == null) {
+            _Store = parent.store();
+        }
     }
 
     /** Commit hash to the given hash.
@@ -118,31 +323,10 @@ public class Commit implements Serializable {
     /** Return the Blob of the filename in the commit.
      * @param fileName */
     public Blob whereBlob(String fileName) {
-        if (_Blobs == null) {
-            return null;
-        }
-        for (Map.Entry<String, Blob> i : _Blobs.entrySet()) {
-            String file = i.getKey();
-            Blob blob = i.getValue();
-            if (file.equals(fileName)) {
-                return blob;
-            }
-        }
-        return null;
-    }
-
-    /** Return true if remoteHead has history.
-     * @param rmHead
-     * */
-    public boolean historyOrNot(Commit rmHead) {
-        Commit arrow = this;
-        while (arrow != null) {
-            if (arrow.getHash().equals(rmHead.getHash())) {
-                return true;
-            }
-            arrow = arrow.getParent();
-        }
-        return false;
+        String hash = _Snapshot == null && _Tree != null
+            ? Tree.lookup(_Store, _Tree, fileName)
+            : snapshot().get(fileName);
+        return hash == null ? null : new Blob(hash, _Store);
     }
 
 }
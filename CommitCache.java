@@ -0,0 +1,30 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The commits most recently read from an object store, keyed by hash.
+ *  Holds at most a fixed number of commits, dropping the least recently
+ *  used one when full, so walking a long history costs memory in
+ *  proportion to the cache size rather than to the history.
+ *  @author Jenna Jang
+ */
+class CommitCache extends LinkedHashMap<String, Commit> {
+
+    /** Default number of commits kept. */
+    static final int DEFAULT_SIZE = 1024;
+
+    /** Most commits kept. */
+    private int _Capacity;
+
+    /** A cache holding at most CAPACITY commits. */
+    CommitCache(int capacity) {
+        super(16, 0.75f, true);
+        _Capacity = Math.max(1, capacity);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Commit> eldest) {
+        return size() > _Capacity;
+    }
+}
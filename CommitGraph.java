@@ -0,0 +1,337 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The commit graph of a repository, kept in .gitlet/commit-graph, which
+ *  answers ancestry questions without reading any commit objects.  Each
+ *  commit has a position; the graph records the position of its parent
+ *  and its generation number, which is 1 for the initial commit and one
+ *  more than its parent's otherwise.  A commit can only be an ancestor of
+ *  commits of higher generation, which lets the walks below stop early.
+ *  The file holds MAGIC, the number of commits N, a fan-out table of 256
+ *  ints whose entry B is the number of hashes whose first byte is at most
+ *  B, the N hashes in sorted order as 20 bytes each, then N parent
+ *  positions (-1 for none) and N generation numbers as 4-byte ints.  It is
+ *  mapped into memory rather than read, so a command that looks up a few
+ *  commits touches only the pages it needs.  Commits added since the file
+ *  was written take the positions after N until it is written again.
+ *  @author Jenna Jang
+ */
+class CommitGraph {
+
+    /** First bytes of the file. */
+    private static final int MAGIC = 0x47434732;
+    /** Entries in the fan-out table. */
+    private static final int FANOUT = 256;
+    /** Offset of the fan-out table in the file. */
+    private static final int FANOUT_OFFSET = 8;
+    /** Offset of the sorted hashes in the file. */
+    private static final int HASHES_OFFSET = FANOUT_OFFSET + 4 * FANOUT;
+    /** Bytes in a binary SHA-1 hash. */
+    static final int HASH_BYTES = 20;
+    /** No commit. */
+    static final int NONE = -1;
+
+    /** The graph kept in FILE, which need not exist yet.  A file in an
+     *  older format counts as missing. */
+    CommitGraph(File file) {
+        _File = file;
+        map();
+    }
+
+    /** Maps the graph file, if it exists and is in this format. */
+    private void map() {
+        _Map = null;
+        _Sorted = 0;
+        if (_File.isFile()) {
+            try (RandomAccessFile in = new RandomAccessFile(_File, "r")) {
+                ByteBuffer map = in.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, 0, in.length());
+                if (map.limit() >= HASHES_OFFSET && map.getInt(0) == MAGIC) {
+                    _Map = map;
+                    _Sorted = map.getInt(4);
+                    _Parents0 = HASHES_OFFSET + _Sorted * HASH_BYTES;
+                    _Generations0 = _Parents0 + 4 * _Sorted;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        _Size = _Sorted;
+        _Hashes = new byte[0];
+        _Parents = new int[0];
+        _Generations = new int[0];
+        _Extra.clear();
+    }
+
+    /** Returns true iff there is no graph file that can be read. */
+    boolean missing() {
+        return _Map == null;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return _Size;
+    }
+
+    /** Returns the position of the commit HASH, or NONE if it is not in
+     *  the graph.
+     * @param hash */
+    int position(String hash) {
+        if (hash == null) {
+            return NONE;
+        }
+        Integer extra = _Extra.get(hash);
+        if (extra != null) {
+            return extra;
+        }
+        if (hash.length() != 2 * HASH_BYTES) {
+            return NONE;
+        }
+        int pos = first(hash);
+        return pos < _Sorted && compare(pos, hash) == 0 ? pos : NONE;
+    }
+
+    /** Returns the hashes of the commits whose ids start with PREFIX, which
+     *  may be of any length, stopping once LIMIT are found.  Asking for two
+     *  tells whether a prefix is unique.
+     * @param prefix
+     * @param limit */
+    List<String> find(String prefix, int limit) {
+        prefix = prefix.toLowerCase();
+        List<String> result = new ArrayList<String>();
+        if (prefix.length() > 2 * HASH_BYTES
+                || !prefix.matches("[0-9a-f]*")) {
+            return result;
+        }
+        for (int pos = first(prefix);
+             pos < _Sorted && result.size() < limit
+                 && compare(pos, prefix) == 0;
+             pos += 1) {
+            result.add(hash(pos));
+        }
+        for (String hash : _Extra.keySet()) {
+            if (result.size() < limit && hash.startsWith(prefix)) {
+                result.add(hash);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the first sorted position whose hash, cut to the length of
+     *  the hexadecimal PREFIX, is not less than it.  The fan-out table
+     *  narrows the search to the hashes sharing its first byte. */
+    private int first(String prefix) {
+        int lo = 0, hi = _Sorted;
+        if (prefix.length() > 0 && _Sorted > 0) {
+            int nibble = Character.digit(prefix.charAt(0), 16);
+            int low = nibble << 4, high = low | 0xf;
+            if (prefix.length() > 1) {
+                low = high = low | Character.digit(prefix.charAt(1), 16);
+            }
+            lo = low == 0 ? 0 : fanout(low - 1);
+            hi = fanout(high);
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the number of sorted hashes whose first byte is at most B. */
+    private int fanout(int b) {
+        return _Map.getInt(FANOUT_OFFSET + 4 * b);
+    }
+
+    /** Returns the hash of the commit at position POS.
+     * @param pos */
+    String hash(int pos) {
+        byte[] result = new byte[HASH_BYTES];
+        if (pos < _Sorted) {
+            for (int i = 0; i < HASH_BYTES; i += 1) {
+                result[i] = _Map.get(HASHES_OFFSET + pos * HASH_BYTES + i);
+            }
+        } else {
+            System.arraycopy(_Hashes, (pos - _Sorted) * HASH_BYTES,
+                    result, 0, HASH_BYTES);
+        }
+        return Utils.toHex(result);
+    }
+
+    /** Returns the position of the parent of the commit at POS, or NONE.
+     * @param pos */
+    int parent(int pos) {
+        return pos < _Sorted ? _Map.getInt(_Parents0 + 4 * pos)
+            : _Parents[pos - _Sorted];
+    }
+
+    /** Returns the generation number of the commit at POS.
+     * @param pos */
+    int generation(int pos) {
+        return pos < _Sorted ? _Map.getInt(_Generations0 + 4 * pos)
+            : _Generations[pos - _Sorted];
+    }
+
+    /** Adds the commit HASH whose parent is PARENTHASH, which must already
+     *  be in the graph (or be null), unless HASH is in it already.
+     * @param hash
+     * @param parentHash */
+    void add(String hash, String parentHash) {
+        if (position(hash) != NONE) {
+            return;
+        }
+        int parent = position(parentHash);
+        if (parentHash != null && parent == NONE) {
+            throw new IllegalArgumentException("parent not in graph");
+        }
+        int i = _Size - _Sorted;
+        if (i == _Parents.length) {
+            int cap = Math.max(16, 2 * i);
+            _Hashes = Arrays.copyOf(_Hashes, cap * HASH_BYTES);
+            _Parents = Arrays.copyOf(_Parents, cap);
+            _Generations = Arrays.copyOf(_Generations, cap);
+        }
+        System.arraycopy(Utils.fromHex(hash), 0, _Hashes, i * HASH_BYTES,
+                HASH_BYTES);
+        _Parents[i] = parent;
+        _Generations[i] = parent == NONE ? 1 : generation(parent) + 1;
+        _Extra.put(hash, _Size);
+        _Size += 1;
+    }
+
+    /** Returns the hash of the latest common ancestor of the commits A
+     *  and B, or null if they have none or either is not in the graph.
+     *  Only the commits between A and B and that ancestor are visited.
+     * @param a
+     * @param b */
+    String mergeBase(String a, String b) {
+        int x = position(a), y = position(b);
+        while (x != NONE && y != NONE && x != y) {
+            int gx = generation(x), gy = generation(y);
+            if (gx >= gy) {
+                x = parent(x);
+            }
+            if (gy >= gx) {
+                y = parent(y);
+            }
+        }
+        return x == NONE || y == NONE ? null : hash(x);
+    }
+
+    /** Returns true iff the commit ANCESTOR is DESCENDANT or one of its
+     *  ancestors.  The walk stops as soon as it passes the generation of
+     *  ANCESTOR.
+     * @param ancestor
+     * @param descendant */
+    boolean isAncestor(String ancestor, String descendant) {
+        int a = position(ancestor), d = position(descendant);
+        if (a == NONE || d == NONE) {
+            return false;
+        }
+        int target = generation(a);
+        while (d != NONE && generation(d) > target) {
+            d = parent(d);
+        }
+        return d == a;
+    }
+
+    /** Writes the graph file if commits were added since it was read. */
+    void save() {
+        if (_Size == _Sorted && !missing()) {
+            return;
+        }
+        String[] hashes = new String[_Size];
+        Map<String, Integer> oldPos = new HashMap<String, Integer>();
+        for (int i = 0; i < _Size; i += 1) {
+            hashes[i] = hash(i);
+            oldPos.put(hashes[i], i);
+        }
+        Arrays.sort(hashes);
+        int[] newPos = new int[_Size];
+        int[] fanout = new int[FANOUT];
+        for (int k = 0; k < _Size; k += 1) {
+            newPos[oldPos.get(hashes[k])] = k;
+            fanout[Integer.parseInt(hashes[k].substring(0, 2), 16)] += 1;
+        }
+        for (int b = 1; b < FANOUT; b += 1) {
+            fanout[b] += fanout[b - 1];
+        }
+        File tmp = new File(_File.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_Size);
+            for (int count : fanout) {
+                out.writeInt(count);
+            }
+            for (String hash : hashes) {
+                out.write(Utils.fromHex(hash));
+            }
+            for (String hash : hashes) {
+                int parent = parent(oldPos.get(hash));
+                out.writeInt(parent == NONE ? NONE : newPos[parent]);
+            }
+            for (String hash : hashes) {
+                out.writeInt(generation(oldPos.get(hash)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!tmp.renameTo(_File)) {
+            throw new IllegalArgumentException("cannot write commit-graph");
+        }
+        map();
+    }
+
+    /** Compares the hash at sorted position POS, cut to the length of the
+     *  hexadecimal PREFIX, with PREFIX. */
+    private int compare(int pos, String prefix) {
+        int base = HASHES_OFFSET + pos * HASH_BYTES;
+        for (int i = 0; i < prefix.length(); i += 1) {
+            int b = _Map.get(base + i / 2) & 0xff;
+            int nibble = i % 2 == 0 ? b >>> 4 : b & 0xf;
+            int c = nibble - Character.digit(prefix.charAt(i), 16);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** The graph file. */
+    private File _File;
+    /** The graph file mapped into memory, or null if there is none. */
+    private ByteBuffer _Map;
+    /** Offsets in _Map of the parent positions and generation numbers. */
+    private int _Parents0, _Generations0;
+    /** Hashes of the commits added since the file was read, 20 bytes
+     *  each, by position less _Sorted. */
+    private byte[] _Hashes;
+    /** Parent positions of the added commits. */
+    private int[] _Parents;
+    /** Generation numbers of the added commits. */
+    private int[] _Generations;
+    /** Number of commits in the file, which are sorted. */
+    private int _Sorted;
+    /** Number of commits in the graph. */
+    private int _Size;
+    /** Positions of the commits added since the file was read. */
+    private HashMap<String, Integer> _Extra = new HashMap<>();
+}
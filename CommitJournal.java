@@ -0,0 +1,284 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The commits of a repository in the order they were made or fetched,
+ *  appended to .gitlet/journal and never rewritten.  Each record has a
+ *  fixed header: its length in bytes, the time it was recorded in
+ *  milliseconds, the commit id and the parent id (zeros for none) as 20
+ *  bytes each, and the lengths of the date and of the message; then the
+ *  date and message in UTF-8; then its length again, so the journal can
+ *  be walked from its end as well as from its start.  Recorded times only
+ *  grow, so the records since a time, or the last few, are found by
+ *  stepping back from the end without reading the rest.  A record cut
+ *  short by a crash, whose footer does not match its header, is ignored
+ *  and overwritten by the next save.
+ *  @author Jenna Jang
+ */
+class CommitJournal {
+
+    /** Bytes of the fixed header of a record. */
+    static final int HEADER = 58;
+    /** Bytes of the footer of a record. */
+    static final int FOOTER = 4;
+    /** Bytes of a commit id. */
+    private static final int ID_BYTES = CommitGraph.HASH_BYTES;
+    /** Offsets in a record of its fields. */
+    private static final int RECORDED = 4, ID = 12, PARENT = 32,
+        DATE_LENGTH = 52, MESSAGE_LENGTH = 54;
+
+    /** The journal of the repository kept in GITLETDIR, whose saves are
+     *  forced to disk iff SYNC. */
+    CommitJournal(File gitletDir, boolean sync) {
+        _File = Utils.join(gitletDir, "journal");
+        _Sync = sync;
+    }
+
+    /** Returns true iff the journal file does not exist. */
+    boolean missing() {
+        return !_File.isFile();
+    }
+
+    /** Adds COMMIT, recorded at time RECORDED, to be written out by save.
+     * @param commit
+     * @param recorded */
+    void add(Commit commit, long recorded) {
+        Entry entry = new Entry();
+        entry.hash = commit.getHash();
+        entry.parent = commit.getParentHash();
+        entry.date = commit.getTimestamp();
+        entry.message = commit.getMessage();
+        entry.recorded = recorded;
+        _Pending.add(entry);
+    }
+
+    /** Returns the records added since the journal was saved. */
+    List<Entry> pending() {
+        return _Pending;
+    }
+
+    /** Appends the new records to the journal file, after the last whole
+     *  record in it. */
+    void save() {
+        if (_Pending.isEmpty() && !missing()) {
+            return;
+        }
+        if (!missing() && end() < _File.length()) {
+            try (RandomAccessFile file = new RandomAccessFile(_File, "rw")) {
+                file.setLength(end());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        _Map = null;
+        try (FileOutputStream file = new FileOutputStream(_File, true);
+             DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(file))) {
+            for (Entry entry : _Pending) {
+                byte[] date = entry.date.getBytes(StandardCharsets.UTF_8);
+                byte[] message = entry.message.getBytes(
+                        StandardCharsets.UTF_8);
+                int length = HEADER + date.length + message.length + FOOTER;
+                out.writeInt(length);
+                out.writeLong(entry.recorded);
+                out.write(Utils.fromHex(entry.hash));
+                out.write(entry.parent == null ? new byte[ID_BYTES]
+                        : Utils.fromHex(entry.parent));
+                out.writeShort(date.length);
+                out.writeInt(message.length);
+                out.write(date);
+                out.write(message);
+                out.writeInt(length);
+            }
+            out.flush();
+            if (_Sync) {
+                file.getFD().sync();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _Pending.clear();
+        _Map = null;
+    }
+
+    /** Returns the offset just past the last whole saved record. */
+    long end() {
+        return map().limit();
+    }
+
+    /** Returns the offset of the record after the one at OFFSET.
+     * @param offset */
+    long next(long offset) {
+        return offset + map().getInt((int) offset);
+    }
+
+    /** Returns the offset of the record before the one at OFFSET, which
+     *  must not be the first.
+     * @param offset */
+    long previous(long offset) {
+        return offset - map().getInt((int) offset - FOOTER);
+    }
+
+    /** Returns the time the record at OFFSET was recorded.
+     * @param offset */
+    long recorded(long offset) {
+        return map().getLong((int) offset + RECORDED);
+    }
+
+    /** Returns the commit id of the record at OFFSET.
+     * @param offset */
+    String id(long offset) {
+        return hex(map(), (int) offset + ID);
+    }
+
+    /** Returns the record at OFFSET.
+     * @param offset */
+    Entry read(long offset) {
+        ByteBuffer map = map();
+        int at = (int) offset;
+        Entry entry = new Entry();
+        entry.offset = offset;
+        entry.recorded = map.getLong(at + RECORDED);
+        entry.hash = hex(map, at + ID);
+        entry.parent = hex(map, at + PARENT);
+        if (entry.parent.matches("0+")) {
+            entry.parent = null;
+        }
+        int dateLength = map.getShort(at + DATE_LENGTH);
+        int messageLength = map.getInt(at + MESSAGE_LENGTH);
+        entry.date = string(map, at + HEADER, dateLength);
+        entry.message = string(map, at + HEADER + dateLength, messageLength);
+        return entry;
+    }
+
+    /** Returns the offset of the first of the last N records.
+     * @param n */
+    long last(int n) {
+        long offset = end();
+        for (; n > 0 && offset > 0; n -= 1) {
+            offset = previous(offset);
+        }
+        return offset;
+    }
+
+    /** Returns the offset of the first record recorded at or after TIME.
+     * @param time */
+    long since(long time) {
+        long offset = end();
+        while (offset > 0 && recorded(previous(offset)) >= time) {
+            offset = previous(offset);
+        }
+        return offset;
+    }
+
+    /** Returns the ids of every commit, saved or not, in order.  Only the
+     *  headers of the records are read. */
+    ArrayList<String> ids() {
+        ArrayList<String> result = new ArrayList<String>();
+        if (!missing()) {
+            for (long at = 0, end = end(); at < end; at = next(at)) {
+                result.add(id(at));
+            }
+        }
+        for (Entry entry : _Pending) {
+            result.add(entry.hash);
+        }
+        return result;
+    }
+
+    /** Returns the journal file mapped into memory. */
+    private ByteBuffer map() {
+        if (_Map == null) {
+            if (missing()) {
+                return ByteBuffer.allocate(0);
+            }
+            try (RandomAccessFile in = new RandomAccessFile(_File, "r")) {
+                _Map = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                        in.length());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _Map.limit(whole(_Map));
+        }
+        return _Map;
+    }
+
+    /** Returns the bytes of MAP up to the end of its last whole record:
+     *  all of them, unless the footer of the last record does not match
+     *  its header, when the records are walked from the start up to the
+     *  first that does not hold together. */
+    private static int whole(ByteBuffer map) {
+        int end = map.limit();
+        if (end == 0 || end >= HEADER + FOOTER
+                && ok(map, end - map.getInt(end - FOOTER), end)) {
+            return end;
+        }
+        int at = 0;
+        while (ok(map, at, end)) {
+            at += map.getInt(at);
+        }
+        return at;
+    }
+
+    /** Returns true iff MAP holds a whole record at AT, ending by END.
+     * @param map
+     * @param at
+     * @param end */
+    private static boolean ok(ByteBuffer map, int at, int end) {
+        if (at < 0 || at > end - HEADER - FOOTER) {
+            return false;
+        }
+        int length = map.getInt(at);
+        return length >= HEADER + FOOTER && length <= end - at
+            && map.getInt(at + length - FOOTER) == length;
+    }
+
+    /** Returns the 20 bytes of MAP at AT in hexadecimal. */
+    private static String hex(ByteBuffer map, int at) {
+        byte[] id = new byte[ID_BYTES];
+        map.duplicate().position(at).get(id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the LENGTH bytes of MAP at AT decoded as UTF-8. */
+    private static String string(ByteBuffer map, int at, int length) {
+        byte[] bytes = new byte[length];
+        map.duplicate().position(at).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** One record of the journal. */
+    static class Entry {
+        /** Commit id. */
+        String hash;
+        /** Parent commit id, or null. */
+        String parent;
+        /** Date of the commit, as log prints it. */
+        String date;
+        /** Commit message. */
+        String message;
+        /** Time the commit was recorded in this repository. */
+        long recorded;
+        /** Offset in the journal, once saved. */
+        long offset;
+    }
+
+    /** The journal file. */
+    private File _File;
+    /** The journal file mapped into memory, or null until used. */
+    private ByteBuffer _Map;
+    /** Whether saves are forced to disk. */
+    private boolean _Sync;
+    /** Records added since the journal was saved. */
+    private List<Entry> _Pending = new ArrayList<Entry>();
+}
@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/** Settings of one repository, kept as KEY=VALUE lines in .gitlet/config.
+ *  A missing file or key means the default value is used.
+ *  @author Jenna Jang
+ */
+class Config {
+
+    /** Number of commits an object store keeps in memory. */
+    static final String COMMIT_CACHE = "core.commitCache";
+
+    /** Name of the codec new objects are compressed with. */
+    static final String COMPRESSION = "core.compression";
+
+    /** Most threads used to scan and hash the working directory. */
+    static final String THREADS = "core.threads";
+
+    /** Whether saved state is forced to disk (true or false). */
+    static final String FSYNC = "core.fsync";
+
+    /** Most deltas in a chain of a pack. */
+    static final String PACK_DEPTH = "pack.depth";
+
+    /** Whether find indexes runs of characters, for substring queries. */
+    static final String FIND_NGRAMS = "find.ngrams";
+
+    /** The config file. */
+    private File _File;
+
+    /** The settings read. */
+    private Properties _Props = new Properties();
+
+    /** The settings of the repository kept in GITLETDIR. */
+    Config(File gitletDir) {
+        File file = Utils.join(gitletDir, "config");
+        _File = file;
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                _Props.load(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the value of KEY, or DEFAULTVALUE if it is not set.
+     * @param key
+     * @param defaultValue */
+    String get(String key, String defaultValue) {
+        return _Props.getProperty(key, defaultValue).trim();
+    }
+
+    /** Sets KEY to VALUE.
+     * @param key
+     * @param value */
+    void set(String key, String value) {
+        _Props.setProperty(key, value);
+    }
+
+    /** Writes the settings back to the config file. */
+    void save() {
+        try (OutputStream out = new FileOutputStream(_File)) {
+            _Props.store(out, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the integer value of KEY, or DEFAULTVALUE if it is not set
+     *  or is not a number.
+     * @param key
+     * @param defaultValue */
+    int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, "" + defaultValue));
+        } catch (NumberFormatException excp) {
+            return defaultValue;
+        }
+    }
+}
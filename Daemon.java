@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.stream.Stream;
+
+/** A server that keeps the repository in the current directory loaded,
+ *  with its caches and the compiled code that runs it, between commands,
+ *  so a command pays for no JVM start, class loading or reading of the
+ *  state files.  It is started in the working directory of a repository
+ *  with
+ *      java gitlet.Main daemon
+ *  and listens on the Unix domain socket .gitlet/daemon.sock, to which
+ *  Client sends the arguments of one command per connection, printing
+ *  what comes back; `java gitlet.Main daemon stop` stops it.  Commands
+ *  run one at a time, each saved as Main saves it.  Before each, the
+ *  state files under .gitlet are compared (size, modification time and
+ *  inode) with what they were after the last one, and if a command run
+ *  outside the daemon changed any, the repository is read afresh; so it
+ *  is after a command fails, which may have left it half changed.  The
+ *  working directory needs no watching, as every command checks it
+ *  through the stat cache anyway.
+ *  @author Jenna Jang
+ */
+class Daemon {
+
+    /** The socket, relative to the working directory. */
+    static final String SOCKET = ".gitlet/daemon.sock";
+
+    /** Reply to a request to stop. */
+    private static final byte[] STOPPED =
+        "Daemon stopped.\n".getBytes(StandardCharsets.UTF_8);
+
+    /** State files and directories whose change means the repository
+     *  must be read again, relative to .gitlet; refs is walked whole. */
+    private static final String[] STATE = { "HEAD", "stage", "wal",
+        "journal", "commits", "packed-refs", "remotes", "config",
+        "commit-graph", "message-index", "index", "fetched",
+        "objects/pack" };
+
+    /** Runs the daemon as ARGS ("daemon" or "daemon stop") say.
+     * @param args */
+    static void main(String... args) throws IOException {
+        File dir = Utils.join(".gitlet");
+        if (!Utils.join(dir, "HEAD").isFile()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        if (args.length == 2 && args[1].equals("stop")) {
+            byte[] reply = Client.send(SOCKET, args);
+            System.out.print(reply == null ? "No daemon is running.\n"
+                             : new String(reply, StandardCharsets.UTF_8));
+        } else if (args.length != 1) {
+            throw Utils.error("Incorrect operands.");
+        } else if (Client.send(SOCKET) != null) {
+            throw Utils.error("A daemon is already running.");
+        } else {
+            new Daemon(dir).serve();
+        }
+    }
+
+    /** A daemon for the repository kept in DIR. */
+    private Daemon(File dir) {
+        _Dir = dir;
+    }
+
+    /** Answers commands until told to stop. */
+    private void serve() throws IOException {
+        Path socket = Path.of(SOCKET);
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server =
+                ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            System.out.println("Listening on " + SOCKET + ".");
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    String[] args = Client.readArgs(new DataInputStream(
+                            Channels.newInputStream(client)));
+                    running = !(args.length == 2 && args[0].equals("daemon")
+                                && args[1].equals("stop"));
+                    byte[] reply = running ? execute(args) : STOPPED;
+                    ByteBuffer buf = ByteBuffer.wrap(reply);
+                    while (buf.hasRemaining()) {
+                        client.write(buf);
+                    }
+                } catch (IOException excp) {
+                    System.err.println("daemon: " + excp.getMessage());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /** Runs the command ARGS and returns what it printed. */
+    private byte[] execute(String... args) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true,
+                StandardCharsets.UTF_8);
+        PrintStream stdout = System.out;
+        System.setOut(out);
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                throw Utils.error("A daemon is already running.");
+            }
+            if (_Repo != null && !fingerprint().equals(_Fingerprint)) {
+                _Repo = null;
+            }
+            if (_Repo == null) {
+                _Repo = Methods.load(_Dir);
+            }
+            Main.run(_Repo, args);
+        } catch (GitletException excp) {
+            if (excp.getMessage() != null) {
+                out.println(excp.getMessage());
+            }
+            _Repo = null;
+        } catch (IOException | RuntimeException excp) {
+            excp.printStackTrace(out);
+            _Repo = null;
+        } finally {
+            System.setOut(stdout);
+            out.flush();
+        }
+        _Fingerprint = fingerprint();
+        return output.toByteArray();
+    }
+
+    /** Returns the size, modification time and inode of each state file
+     *  of the repository, and of every file under refs. */
+    private String fingerprint() {
+        StringBuilder result = new StringBuilder();
+        for (String name : STATE) {
+            stat(Utils.join(_Dir, name).toPath(), result);
+        }
+        try (Stream<Path> refs = Files.walk(Utils.join(_Dir, "refs")
+                                            .toPath())) {
+            refs.forEach(path -> stat(path, result));
+        } catch (IOException excp) {
+            result.append("refs?");
+        }
+        return result.toString();
+    }
+
+    /** Appends the name, size, modification time and file key of PATH,
+     *  or that there is none, to RESULT. */
+    private static void stat(Path path, StringBuilder result) {
+        result.append(path).append(' ');
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path,
+                    BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            result.append(attrs.size()).append(' ')
+                .append(attrs.lastModifiedTime().toInstant()).append(' ')
+                .append(attrs.fileKey());
+        } catch (IOException excp) {
+            result.append('-');
+        }
+        result.append('\n');
+    }
+
+    /** The .gitlet directory. */
+    private File _Dir;
+    /** The repository as last loaded and saved, or null if it is to be
+     *  read before the next command. */
+    private Methods _Repo;
+    /** The state files as the last command left them. */
+    private String _Fingerprint;
+}
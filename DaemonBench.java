@@ -0,0 +1,73 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/** A benchmark of the latency of commands run through Daemon, which may
+ *  be invoked as
+ *      java gitlet.DaemonBench [ROUNDS]
+ *  in the working directory of a repository whose daemon is running.  It
+ *  sends status, log and branch (making and removing a branch) ROUNDS
+ *  times each (default 200) and reports the median, 90th percentile and
+ *  worst time from connecting to the end of the reply, then times a few
+ *  runs of status as a new JVM running Main, for comparison.
+ *  @author Jenna Jang
+ */
+public class DaemonBench {
+
+    /** Runs of the command as a new process. */
+    private static final int COLD_RUNS = 5;
+
+    /** Runs the benchmark; ARGS may give the number of rounds. */
+    public static void main(String... args)
+        throws IOException, InterruptedException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        if (Client.send(Daemon.SOCKET, "status") == null) {
+            System.out.println("No daemon is running.");
+            return;
+        }
+        System.out.printf("%-22s %9s %9s %9s%n", "command", "p50 ms",
+                "p90 ms", "max ms");
+        long[] status = new long[rounds], log = new long[rounds],
+            branch = new long[2 * rounds];
+        for (int i = 0; i < rounds; i += 1) {
+            status[i] = time("status");
+            log[i] = time("log");
+            branch[2 * i] = time("branch", "bench-" + i);
+            branch[2 * i + 1] = time("rm-branch", "bench-" + i);
+        }
+        report("status (daemon)", status);
+        report("log (daemon)", log);
+        report("branch/rm-branch", branch);
+        long[] cold = new long[COLD_RUNS];
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        for (int i = 0; i < COLD_RUNS; i += 1) {
+            long start = System.nanoTime();
+            new ProcessBuilder(java, "-cp",
+                    System.getProperty("java.class.path"), "gitlet.Main",
+                    "status").redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start().waitFor();
+            cold[i] = System.nanoTime() - start;
+        }
+        report("status (new JVM)", cold);
+    }
+
+    /** Returns the nanoseconds the daemon takes to answer ARGS. */
+    private static long time(String... args) throws IOException {
+        long start = System.nanoTime();
+        Client.send(Daemon.SOCKET, args);
+        return System.nanoTime() - start;
+    }
+
+    /** Prints the median, 90th percentile and most of NANOS, for NAME. */
+    private static void report(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-22s %9.2f %9.2f %9.2f%n", name,
+                sorted[sorted.length / 2] / 1e6,
+                sorted[sorted.length * 9 / 10] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+}
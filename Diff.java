@@ -1,55 +1,169 @@
 package gitlet;
 
+import java.util.AbstractList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 
 import java.io.IOException;
-import java.nio.file.InvalidPathException;
 
 import static java.lang.Math.max;
 
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
- *  next.
+ *  next.  Either of two algorithms may do the work: a table of the longest
+ *  common subsequences of all pairs of prefixes (LCS), or Myers' algorithm
+ *  (MYERS), which needs memory only in proportion to the lengths of the
+ *  sequences and time in proportion to their lengths times the number of
+ *  lines inserted or deleted.  Whatever the input, each distinct line is
+ *  first numbered, so that both algorithms compare ints; the lines of
+ *  files and buffers are numbered straight from their bytes, and become
+ *  Strings only if asked for.
  *  @author P. N. Hilfinger */
 public class Diff {
 
+    /** The algorithms by which sequences may be compared. */
+    public enum Algorithm {
+        /** The lls table of every pair of prefixes: O(N*M) time and
+         *  space. */
+        LCS,
+        /** Myers' O((N+M)D) greedy algorithm, D being the number of items
+         *  inserted or deleted, in the variant that finds the middle snake
+         *  of the edit graph and recurses on either side of it, so that it
+         *  needs only O(N+M) space. */
+        MYERS
+    }
+
+    /** A comparison using the LCS algorithm. */
+    public Diff() {
+        this(Algorithm.LCS);
+    }
+
+    /** A comparison using ALGORITHM. */
+    public Diff(Algorithm algorithm) {
+        _algorithm = algorithm;
+    }
+
+    /** Limits the comparison to LIMIT insertions and deletions: if the
+     *  sequences need more, commonSubsequence and diffs return null.
+     *  MYERS then stops as soon as it knows, after O((N+M)LIMIT) steps. */
+    public void setEditLimit(int limit) {
+        _editLimit = limit;
+        _runs = null;
+    }
+
     /** Set the sequences currently being compared to the contents
      *  of SEQ1 and SEQ2 (as delivered by their iterators). */
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
+        HashMap<String, Integer> ids = new HashMap<>();
+        _ids1 = intern(_lines1, ids);
+        _ids2 = intern(_lines2, ids);
+        reset();
+    }
+
+    /** Set the sequences currently being compared to the lines of FILE1
+     *  and FILE2, ended by a newline, a carriage return or both, which are
+     *  not part of the lines.  The files are mapped into memory rather
+     *  than read, and their lines decoded as UTF-8 only by get1 and get2.
+     *  Null Files set empty lists. */
+    public void setSequences(File file1, File file2) {
+        setSequences(new Lines(map(file1), false, StandardCharsets.UTF_8),
+                     new Lines(map(file2), false, StandardCharsets.UTF_8));
+    }
+
+    /** Set the sequences currently being compared to the lines of the
+     *  remaining bytes of TEXT1 and TEXT2, each up to and including a
+     *  newline, so that joining them gives back the bytes exactly.  get1
+     *  and get2 decode them as ISO-8859-1, one char per byte. */
+    public void setSequences(ByteBuffer text1, ByteBuffer text2) {
+        setSequences(new Lines(text1, true, StandardCharsets.ISO_8859_1),
+                     new Lines(text2, true, StandardCharsets.ISO_8859_1));
+    }
+
+    /** Set the sequences currently being compared to LINES1 and LINES2,
+     *  numbering their lines. */
+    private void setSequences(Lines lines1, Lines lines2) {
+        _lines1 = lines1;
+        _lines2 = lines2;
+        intern(lines1, lines2);
+        reset();
+    }
+
+    /** Forgets the results for the previous sequences. */
+    private void reset() {
         _lls = null;
         _todo = null;
+        _runs = null;
     }
 
-    /** Set the sequences currently being compared to the contents
-     *  of FILE1 and FILE2.  Null Files set empty lists. */
-    public void setSequences(File file1, File file2) {
-        try {
-            Path p1 = file1.toPath();
-            _lines1 = Files.readAllLines(p1);
-        } catch (IOException | InvalidPathException | NullPointerException
-                 excp) {
-            _lines1 = Collections.emptyList();
+    /** Returns the contents of FILE mapped into memory, or an empty buffer
+     *  if it is null or cannot be read. */
+    private static ByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                 StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException | IllegalArgumentException
+                 | NullPointerException excp) {
+            return ByteBuffer.allocate(0);
         }
-        try {
-            Path p2 = file2.toPath();
-            _lines2 = Files.readAllLines(p2);
-        } catch (IOException | InvalidPathException | NullPointerException
-                 excp) {
-            _lines2 = Collections.emptyList();
+    }
+
+    /** Returns the numbers of the items of LINES, numbering each String
+     *  not yet in IDS by the number of Strings IDS holds and adding it. */
+    private static int[] intern(List<String> lines,
+                                HashMap<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Integer id = ids.putIfAbsent(lines.get(i), ids.size());
+            result[i] = id == null ? ids.size() - 1 : id;
         }
-        _lls = null;
-        _todo = null;
+        return result;
+    }
+
+    /** Sets _ids1 and _ids2 to numbers for the lines of LINES1 and LINES2,
+     *  equal exactly where the bytes of the lines are, using a table of
+     *  line hashes open-addressed by linear probing.  A line is numbered by
+     *  the position of its first occurrence among all the lines of LINES1
+     *  then LINES2. */
+    private void intern(Lines lines1, Lines lines2) {
+        int n1 = lines1.size(), n = n1 + lines2.size();
+        int mask = Integer.highestOneBit(2 * n + 1) * 2 - 1;
+        int[] slots = new int[mask + 1], hashes = new int[mask + 1];
+        int[] ids = new int[n];
+        for (int g = 0; g < n; g += 1) {
+            Lines lines = g < n1 ? lines1 : lines2;
+            int k = g < n1 ? g : g - n1;
+            int hash = lines.hash(k);
+            int i = hash & mask;
+            for (; slots[i] != 0; i = (i + 1) & mask) {
+                int h = slots[i] - 1;
+                if (hashes[i] == hash
+                    && lines.same(k, h < n1 ? lines1 : lines2,
+                                  h < n1 ? h : h - n1)) {
+                    break;
+                }
+            }
+            if (slots[i] == 0) {
+                slots[i] = g + 1;
+                hashes[i] = hash;
+            }
+            ids[g] = slots[i] - 1;
+        }
+        _ids1 = Arrays.copyOfRange(ids, 0, n1);
+        _ids2 = Arrays.copyOfRange(ids, n1, n);
     }
 
     /** Return the first of the current sequences. */
@@ -76,6 +190,16 @@ public class Diff {
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
+        if (_algorithm == Algorithm.MYERS) {
+            k1 = Math.min(k1, _lines1.size());
+            k2 = Math.min(k2, _lines2.size());
+            int[] runs = myers(k1, k2, Integer.MAX_VALUE);
+            int result = 0;
+            for (int k = 2; k < runs.length; k += 3) {
+                result += runs[k];
+            }
+            return result;
+        }
         if (_lls == null) {
             _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
             for (int[] row : _lls) {
@@ -97,8 +221,7 @@ public class Diff {
                 } else {
                     switch (_llsState) {
                     case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
+                        if (same(_llsTop1 - 1, _llsTop2 - 1)) {
                             push(_llsTop1, _llsTop2, 4);
                             push(_llsTop1 - 1, _llsTop2 - 1, 0);
                         } else {
@@ -166,6 +289,17 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
+        checkData();
+        if (_algorithm == Algorithm.MYERS) {
+            if (_runs == null) {
+                _runs = myers(_lines1.size(), _lines2.size(), _editLimit);
+            }
+            return _runs == null ? null : _runs.clone();
+        }
+        if (_editLimit < Integer.MAX_VALUE && _lines1.size() + _lines2.size()
+            - 2 * lls() > _editLimit) {
+            return null;
+        }
         ArrayDeque<Integer> resultList = new ArrayDeque<>();
 
         int k1, k2;
@@ -199,9 +333,13 @@ public class Diff {
      *  from that file, and the lines [ai .. ai + aL0 - 1] are the starting
      *  positions in the second file that are to replace them.  Either
      *  dLi or aLi, but not both, may be 0, indicating respectively simple
-     *  removal of lines or addition of lines. */
+     *  removal of lines or addition of lines.  Null if the edit exceeds the
+     *  edit limit. */
     public int[] diffs() {
         int[] common = commonSubsequence();
+        if (common == null) {
+            return null;
+        }
         ArrayList<Integer> result = new ArrayList<>();
         int e1, e2;
         e1 = e2 = 0;
@@ -224,6 +362,160 @@ public class Diff {
         return toIntArr(result);
     }
 
+    /** Returns the common runs, as commonSubsequence, of the first K1 and
+     *  K2 items of the sequences, found by Myers' algorithm, or null if they
+     *  need more than LIMIT insertions and deletions. */
+    private int[] myers(int k1, int k2, int limit) {
+        int max = (k1 + k2 + 1) / 2 + 1;
+        _offset = max + 1;
+        _forward = new int[2 * _offset + 1];
+        _backward = new int[2 * _offset + 1];
+        _found = new int[3 * 16];
+        _foundp = 0;
+        boolean done = solve(0, 0, k1, k2, limit);
+        _forward = _backward = null;
+        int[] result = done ? Arrays.copyOf(_found, _foundp) : null;
+        _found = null;
+        return result;
+    }
+
+    /** Adds the common runs of items [X0 .. X1-1] of the first sequence
+     *  and [Y0 .. Y1-1] of the second to _found, in order, unless they need
+     *  more than LIMIT insertions and deletions, in which case it returns
+     *  false.  Common items at either end are matched directly; otherwise
+     *  the middle snake splits the problem in two, each with about half
+     *  the edits. */
+    private boolean solve(int x0, int y0, int x1, int y1, int limit) {
+        int start = 0;
+        while (x0 + start < x1 && y0 + start < y1
+               && same(x0 + start, y0 + start)) {
+            start += 1;
+        }
+        found(x0, y0, start);
+        x0 += start;
+        y0 += start;
+        int end = 0;
+        while (x1 - end > x0 && y1 - end > y0
+               && same(x1 - end - 1, y1 - end - 1)) {
+            end += 1;
+        }
+        x1 -= end;
+        y1 -= end;
+        if (x0 < x1 && y0 < y1) {
+            int edits = middleSnake(x0, y0, x1, y1, limit);
+            if (edits < 0) {
+                return false;
+            }
+            int sx = _snakeX0, sy = _snakeY0, ex = _snakeX1, ey = _snakeY1;
+            int rest = Integer.MAX_VALUE;
+            solve(x0, y0, sx, sy, rest);
+            solve(sx, sy, ex, ey, rest);
+            solve(ex, ey, x1, y1, rest);
+        } else if (x1 - x0 + y1 - y0 > limit) {
+            return false;
+        }
+        found(x1, y1, end);
+        return true;
+    }
+
+    /** Finds the middle snake of the edit graph of items [LEFT .. RIGHT-1]
+     *  of the first sequence and [TOP .. BOTTOM-1] of the second, searching
+     *  forward from the top left and backward from the bottom right until
+     *  the two searches overlap, and sets _snakeX0 .. _snakeY1 to its ends.
+     *  Returns the number of insertions and deletions between the two
+     *  ranges, or -1 if it is more than LIMIT. */
+    private int middleSnake(int left, int top, int right, int bottom,
+                            int limit) {
+        int[] vf = _forward, vb = _backward;
+        int off = _offset;
+        int delta = (right - left) - (bottom - top);
+        boolean odd = (delta & 1) != 0;
+        int max = Math.min((right - left + bottom - top + 1) / 2,
+                           limit / 2 + 1);
+        vf[off + 1] = left;
+        vb[off + 1] = bottom;
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = d; k >= -d; k -= 2) {
+                int px, x;
+                if (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                    px = x = vf[off + k + 1];
+                } else {
+                    px = vf[off + k - 1];
+                    x = px + 1;
+                }
+                int y = top + (x - left) - k;
+                int py = (d == 0 || x != px) ? y : y - 1;
+                while (x < right && y < bottom && same(x, y)) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int c = k - delta;
+                if (odd && c >= -(d - 1) && c <= d - 1 && y >= vb[off + c]) {
+                    return snake(px, py, x, y, 2 * d - 1, limit);
+                }
+            }
+            for (int c = d; c >= -d; c -= 2) {
+                int py, y;
+                if (c == -d || (c != d && vb[off + c - 1] > vb[off + c + 1])) {
+                    py = y = vb[off + c + 1];
+                } else {
+                    py = vb[off + c - 1];
+                    y = py - 1;
+                }
+                int k = c + delta;
+                int x = left + (y - top) + k;
+                int px = (d == 0 || y != py) ? x : x + 1;
+                while (x > left && y > top && same(x - 1, y - 1)) {
+                    x -= 1;
+                    y -= 1;
+                }
+                vb[off + c] = y;
+                if (!odd && k >= -d && k <= d && x <= vf[off + k]) {
+                    return snake(x, y, px, py, 2 * d, limit);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Records the middle snake from (X0, Y0) to (X1, Y1) and returns
+     *  EDITS, or -1 if that is more than LIMIT. */
+    private int snake(int x0, int y0, int x1, int y1, int edits, int limit) {
+        _snakeX0 = x0;
+        _snakeY0 = y0;
+        _snakeX1 = x1;
+        _snakeY1 = y1;
+        return edits > limit ? -1 : edits;
+    }
+
+    /** Adds to _found the run of LEN common items starting at item X of
+     *  the first sequence and Y of the second, joining it to the last run
+     *  if they touch. */
+    private void found(int x, int y, int len) {
+        if (len == 0) {
+            return;
+        }
+        if (_foundp > 0 && _found[_foundp - 3] + _found[_foundp - 1] == x
+            && _found[_foundp - 2] + _found[_foundp - 1] == y) {
+            _found[_foundp - 1] += len;
+            return;
+        }
+        if (_foundp == _found.length) {
+            _found = Arrays.copyOf(_found, 2 * _found.length);
+        }
+        _found[_foundp] = x;
+        _found[_foundp + 1] = y;
+        _found[_foundp + 2] = len;
+        _foundp += 3;
+    }
+
+    /** Returns true iff item X of the first sequence equals item Y of the
+     *  second. */
+    private boolean same(int x, int y) {
+        return _ids1[x] == _ids2[y];
+    }
+
     /** Raise an exception if there are no current data sequences for
      *  comparison. */
     private void checkData() {
@@ -260,8 +552,102 @@ public class Diff {
         return _todop <= 0;
     }
 
+    /** The lines of a buffer of bytes, located when it is set and decoded
+     *  to Strings only when got. */
+    private static class Lines extends AbstractList<String> {
+        /** The lines of the remaining bytes of TEXT, ended by a newline,
+         *  carriage return or both.  The ends are part of the lines iff
+         *  KEEPENDS, in which case only newlines end lines.  Lines are
+         *  decoded with CHARSET. */
+        Lines(ByteBuffer text, boolean keepEnds, Charset charset) {
+            _text = text.slice();
+            _charset = charset;
+            int[] starts = new int[16], ends = new int[16];
+            int n = 0, limit = _text.limit();
+            for (int p = 0; p < limit;) {
+                int start = p;
+                byte b = 0;
+                while (p < limit) {
+                    b = _text.get(p);
+                    if (b == '\n' || (b == '\r' && !keepEnds)) {
+                        break;
+                    }
+                    p += 1;
+                }
+                int end = p;
+                if (p < limit) {
+                    p += 1;
+                    if (b == '\r' && p < limit && _text.get(p) == '\n') {
+                        p += 1;
+                    }
+                    if (keepEnds) {
+                        end = p;
+                    }
+                }
+                if (n == starts.length) {
+                    starts = Arrays.copyOf(starts, 2 * n);
+                    ends = Arrays.copyOf(ends, 2 * n);
+                }
+                starts[n] = start;
+                ends[n] = end;
+                n += 1;
+            }
+            _starts = starts;
+            _ends = ends;
+            _size = n;
+        }
+
+        @Override
+        public String get(int k) {
+            if (k < 0 || k >= _size) {
+                throw new IndexOutOfBoundsException(Integer.toString(k));
+            }
+            byte[] bytes = new byte[_ends[k] - _starts[k]];
+            _text.get(_starts[k], bytes);
+            return new String(bytes, _charset);
+        }
+
+        @Override
+        public int size() {
+            return _size;
+        }
+
+        /** Returns a hash of the bytes of line K. */
+        int hash(int k) {
+            int h = 0;
+            for (int p = _starts[k]; p < _ends[k]; p += 1) {
+                h = 31 * h + _text.get(p);
+            }
+            h *= 0x9e3779b9;
+            return h ^ (h >>> 15);
+        }
+
+        /** Returns true iff line K has the same bytes as line J of
+         *  OTHER. */
+        boolean same(int k, Lines other, int j) {
+            int len = _ends[k] - _starts[k];
+            if (len != other._ends[j] - other._starts[j]) {
+                return false;
+            }
+            return _text.slice(_starts[k], len)
+                .equals(other._text.slice(other._starts[j], len));
+        }
+
+        /** The bytes. */
+        private final ByteBuffer _text;
+        /** Charset of the text. */
+        private final Charset _charset;
+        /** Start and end of each line in _text. */
+        private final int[] _starts, _ends;
+        /** Number of lines. */
+        private final int _size;
+    }
+
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
+    /** The number of each line of the sequences, equal iff the lines
+     *  are. */
+    private int[] _ids1, _ids2;
 
     /** The memo table for longest common subsequence.  _lls[a][b] contains the
      *  length of the longest common sequence of the prefixes of the current
@@ -273,4 +659,25 @@ public class Diff {
     /** Structure for the work queue used by lls. */
     private int _todop, _llsState, _llsTop1, _llsTop2;
 
+    /** The algorithm comparing the sequences. */
+    private final Algorithm _algorithm;
+    /** Most insertions and deletions an edit may have. */
+    private int _editLimit = Integer.MAX_VALUE;
+    /** The common subsequence found by MYERS, or null if not found yet or
+     *  over the edit limit. */
+    private int[] _runs;
+    /** Furthest x reached on each diagonal by the forward search and
+     *  furthest y by the backward search of middleSnake, by diagonal plus
+     *  _offset. */
+    private int[] _forward, _backward;
+    /** Offset of diagonal 0 in _forward and _backward. */
+    private int _offset;
+    /** Ends of the last middle snake found. */
+    private int _snakeX0, _snakeY0, _snakeX1, _snakeY1;
+    /** Common runs found so far by MYERS, as in commonSubsequence, and the
+     *  number of ints of it used. */
+    private int[] _found;
+    /** Number of ints of _found used. */
+    private int _foundp;
+
 }
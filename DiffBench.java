@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.sun.management.ThreadMXBean;
+
+/** A benchmark comparing the algorithms of Diff, which may be invoked as
+ *      java gitlet.DiffBench [LINES]
+ *  For pairs of source-like files of up to LINES lines (default 100000),
+ *  the second a copy of the first with about one line in a hundred
+ *  changed, inserted or deleted in scattered hunks, it reports the time
+ *  each algorithm takes to find the diffs and the memory its working
+ *  arrays need.  LCS is run only while its table fits in LCS_MAX_CELLS
+ *  cells; both must agree on the length of the common subsequence.
+ *  Then for a pair of log files of LINES lines it compares reading them
+ *  with Files.readAllLines into Strings against letting Diff map them
+ *  and number their lines from the bytes, reporting the time and the
+ *  bytes allocated by each.
+ *  @author Jenna Jang
+ */
+public class DiffBench {
+
+    /** Largest LCS table tried. */
+    private static final long LCS_MAX_CELLS = 50_000_000L;
+
+    /** Times each diff is repeated, keeping the fastest. */
+    private static final int ROUNDS = 5;
+
+    /** Runs the benchmark; ARGS may give the largest file in lines. */
+    public static void main(String... args) throws IOException {
+        int most = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Random random = new Random(17);
+        System.out.printf("%8s %7s %-6s %12s %12s%n", "lines", "edits",
+                "algo", "ms", "memory KB");
+        for (int lines = 100; lines <= most; lines *= 10) {
+            run(random, lines);
+            if (lines * 3 <= most) {
+                run(random, lines * 3);
+            }
+        }
+        File dir = Files.createTempDirectory("gitlet-diff").toFile();
+        File file1 = new File(dir, "1.log"), file2 = new File(dir, "2.log");
+        try {
+            List<String> base = log(random, most);
+            Files.write(file1.toPath(), base);
+            Files.write(file2.toPath(), edit(random, base));
+            System.out.printf("%n%8s %-12s %12s %14s%n", "lines", "input",
+                    "ms", "allocated MB");
+            for (int i = 0; i < 2; i += 1) {
+                runFiles(file1, file2, most, false);
+                runFiles(file1, file2, most, true);
+            }
+        } finally {
+            file1.delete();
+            file2.delete();
+            dir.delete();
+        }
+    }
+
+    /** Diffs FILE1 and FILE2, of about LINES lines, by MYERS, letting Diff
+     *  map them if MAPPED and otherwise reading them into Strings first,
+     *  and prints the fastest time and the bytes allocated. */
+    private static void runFiles(File file1, File file2, int lines,
+                                 boolean mapped) throws IOException {
+        ThreadMXBean threads =
+            (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long best = Long.MAX_VALUE, allocated = 0;
+        for (int i = 0; i < ROUNDS; i += 1) {
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            Diff diff = new Diff(Diff.Algorithm.MYERS);
+            if (mapped) {
+                diff.setSequences(file1, file2);
+            } else {
+                diff.setSequences(Files.readAllLines(file1.toPath()),
+                                  Files.readAllLines(file2.toPath()));
+            }
+            diff.diffs();
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = threads.getCurrentThreadAllocatedBytes() - bytes;
+        }
+        System.out.printf("%8d %-12s %12.2f %14.1f%n", lines,
+                mapped ? "mapped" : "readAllLines", best / 1e6,
+                allocated / 1e6);
+    }
+
+    /** Diffs a pair of files of about LINES lines made with RANDOM by each
+     *  algorithm, and prints the results. */
+    private static void run(Random random, int lines) {
+        List<String> base = file(random, lines);
+        List<String> target = edit(random, base);
+        int common = -1;
+        for (Diff.Algorithm algorithm : Diff.Algorithm.values()) {
+            long cells = (long) (base.size() + 1) * (target.size() + 1);
+            if (algorithm == Diff.Algorithm.LCS && cells > LCS_MAX_CELLS) {
+                continue;
+            }
+            long best = Long.MAX_VALUE;
+            int length = 0;
+            for (int i = 0; i < ROUNDS; i += 1) {
+                Diff diff = new Diff(algorithm);
+                diff.setSequences(base, target);
+                long start = System.nanoTime();
+                diff.diffs();
+                length = diff.lls();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            if (common >= 0 && common != length) {
+                throw new AssertionError("algorithms disagree at " + lines);
+            }
+            common = length;
+            long memory = algorithm == Diff.Algorithm.LCS ? 4 * cells
+                : 2 * 4 * (base.size() + target.size() + 4L);
+            System.out.printf("%8d %7d %-6s %12.2f %12d%n", lines,
+                    base.size() + target.size() - 2 * length,
+                    algorithm.name(), best / 1e6, memory / 1024);
+        }
+    }
+
+    /** Returns a file of LINES lines made with RANDOM, resembling source
+     *  code: indented statements from a small vocabulary, with repeated
+     *  blank and closing-brace lines. */
+    private static List<String> file(Random random, int lines) {
+        String[] words = { "int", "result", "=", "for", "(", ")", "{",
+            "return", "next", "+", "1;", "if", "size", "<", "value" };
+        ArrayList<String> result = new ArrayList<String>();
+        for (int i = 0; i < lines; i += 1) {
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                result.add("");
+            } else if (kind == 1) {
+                result.add("    }");
+            } else {
+                StringBuilder line = new StringBuilder("        ");
+                for (int n = 2 + random.nextInt(6); n > 0; n -= 1) {
+                    line.append(words[random.nextInt(words.length)])
+                        .append(' ');
+                }
+                result.add(line.toString());
+            }
+        }
+        return result;
+    }
+
+    /** Returns a log of LINES lines made with RANDOM: timestamped
+     *  messages from a few sources, nearly all distinct. */
+    private static List<String> log(Random random, int lines) {
+        String[] levels = { "INFO", "DEBUG", "WARN" };
+        ArrayList<String> result = new ArrayList<String>();
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < lines; i += 1) {
+            time += random.nextInt(1000);
+            result.add(String.format("%d %-5s worker-%d request %08x took"
+                    + " %d ms", time, levels[random.nextInt(levels.length)],
+                    random.nextInt(16), random.nextInt(), random.nextInt(500)));
+        }
+        return result;
+    }
+
+    /** Returns BASE with about one line in a hundred changed, inserted or
+     *  deleted, in hunks of up to five lines, using RANDOM. */
+    private static List<String> edit(Random random, List<String> base) {
+        ArrayList<String> result = new ArrayList<String>();
+        int i = 0;
+        while (i < base.size()) {
+            if (random.nextInt(300) == 0) {
+                int hunk = 1 + random.nextInt(5);
+                int kind = random.nextInt(3);
+                if (kind != 1) {
+                    for (int k = 0; k < hunk; k += 1) {
+                        result.add("        edited " + random.nextInt());
+                    }
+                }
+                if (kind != 0) {
+                    i += hunk;
+                }
+            } else {
+                result.add(base.get(i));
+                i += 1;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/** A benchmark of the binary encoding against Java serialization, which
+ *  may be invoked as
+ *      java gitlet.FormatBench [COMMITS]
+ *  It makes a history of COMMITS (default 20000) commits, each changing a
+ *  file, and a stage of as many files, then encodes and decodes each in
+ *  both formats, reporting the bytes per object and the objects and
+ *  megabytes per second encoded and decoded, best of ROUNDS.
+ *  @author Jenna Jang
+ */
+public class FormatBench {
+
+    /** Times each pass is repeated. */
+    private static final int ROUNDS = 5;
+
+    /** Runs the benchmark; ARGS may give the number of commits. */
+    public static void main(String... args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        File repo = Files.createTempDirectory("gitlet-bench").toFile();
+        try {
+            ObjectStore store = new ObjectStore(repo, new Config(repo));
+            store.create();
+            ArrayList<Commit> commits = new ArrayList<Commit>();
+            Commit parent = new Commit("initial commit", null);
+            parent.setStore(store);
+            Stage stage = new Stage();
+            for (int i = 0; i < n; i += 1) {
+                String path = "src/dir" + i % 50 + "/File" + i % 400
+                    + ".java";
+                String blob = Utils.sha1("blob " + i);
+                Commit commit = new Commit(parent);
+                commit.setMessage("Change " + path + " for request " + i);
+                commit.setTimestamp();
+                HashMap<String, String> changes =
+                    new HashMap<String, String>();
+                changes.put(path, blob);
+                commit.change(changes);
+                commit.setParent(parent);
+                commit.seal(store);
+                commits.add(commit);
+                stage.add("src/staged/dir" + i % 50 + "/File" + i + ".java",
+                        new Blob(blob, store));
+                parent = commit;
+            }
+            System.out.printf("%-7s %-10s %10s %12s %12s %12s %12s%n",
+                    "object", "format", "bytes/obj", "encode/s",
+                    "decode/s", "encode MB/s", "decode MB/s");
+            run("commit", "serialized", commits, Utils::serialize,
+                data -> Binary.deserialize(data, Commit.class));
+            run("commit", "binary", commits, Commit::encode,
+                Commit::decode);
+            List<Stage> stages = List.of(stage);
+            run("stage", "serialized", stages, Utils::serialize,
+                data -> Binary.deserialize(data, Stage.class));
+            run("stage", "binary", stages, Stage::encode,
+                data -> Stage.decode(data, store));
+        } finally {
+            delete(repo);
+        }
+    }
+
+    /** Encodes every one of OBJECTS with ENCODE and decodes them again
+     *  with DECODE, printing the results for objects of KIND in FORMAT. */
+    private static <T> void run(String kind, String format, List<T> objects,
+                                Function<T, byte[]> encode,
+                                Function<byte[], Object> decode) {
+        ArrayList<byte[]> encoded = new ArrayList<byte[]>();
+        long bytes = 0, encodeBest = Long.MAX_VALUE,
+            decodeBest = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round += 1) {
+            encoded.clear();
+            bytes = 0;
+            long start = System.nanoTime();
+            for (T object : objects) {
+                byte[] data = encode.apply(object);
+                encoded.add(data);
+                bytes += data.length;
+            }
+            encodeBest = Math.min(encodeBest, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (byte[] data : encoded) {
+                decode.apply(data);
+            }
+            decodeBest = Math.min(decodeBest, System.nanoTime() - start);
+        }
+        int n = objects.size();
+        System.out.printf("%-7s %-10s %10d %12.0f %12.0f %12.1f %12.1f%n",
+                kind, format, bytes / n, n / (encodeBest / 1e9),
+                n / (decodeBest / 1e9), rate(bytes, encodeBest),
+                rate(bytes, decodeBest));
+    }
+
+    /** Returns BYTES per NANOS as MB/s. */
+    private static double rate(long bytes, long nanos) {
+        return bytes / 1048576.0 / (nanos / 1e9);
+    }
+
+    /** Deletes FILE and everything under it. */
+    private static void delete(File file) throws IOException {
+        try (Stream<java.nio.file.Path> paths = Files.walk(file.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The stat cache of the working directory, kept in .gitlet/index.
+ *  For each path it records the size, modification time and inode of
+ *  the file when it was last hashed, together with that hash, so a file
+ *  whose stat data is unchanged is not read again.  A file modified
+ *  within RACY_MILLIS of being hashed is always re-hashed, since a
+ *  second change in the same clock tick would leave its stat data alone,
+ *  unless it was hashed by this same command.  Safe for use by several
+ *  threads at once, which hashAll uses to hash many files in parallel.
+ *  @author Jenna Jang
+ */
+class Index {
+
+    /** Version of the index file format.  Version 1 kept the inode
+     *  number from unix:ino, version 2 the hash of the file key, which
+     *  costs no second system call; version 3 drops the conflict marker
+     *  flag of each entry. */
+    private static final int VERSION = 3;
+
+    /** How close to the time it was hashed a file's modification time may
+     *  be before the cached hash is distrusted. */
+    static final long RACY_MILLIS = 2000;
+
+    /** The index of the working directory CWD, kept in the file FILE. */
+    Index(File cwd, File file) {
+        _CWD = cwd.toPath().toAbsolutePath();
+        _File = file;
+    }
+
+    /** Returns the hash id of the content of FILE, re-reading the file only
+     *  if its stat data changed since it was last hashed.
+     * @param file */
+    String hash(File file) {
+        Entry entry = fresh(file);
+        if (entry == null) {
+            entry = stat(file);
+            if (entry == null) {
+                return Blob.hashOf(file);
+            }
+            entry.hash = Blob.hashOf(file);
+            put(file, entry);
+        }
+        return entry.hash;
+    }
+
+    /** Hashes each of FILES whose cached hash is out of date, using a
+     *  pool of at most THREADS threads.  Results go into the cache, so
+     *  that hash then answers for these files without reading them; the
+     *  callers still visit the files in their own order, which keeps
+     *  their output the same however the work was split up.
+     * @param files
+     * @param threads */
+    void hashAll(List<File> files, int threads) {
+        entries();
+        Utils.forEach(files, threads, this::prefetch);
+    }
+
+    /** Caches the hash of FILE. */
+    private void prefetch(File file) {
+        if (fresh(file) == null && file.isFile()) {
+            hash(file);
+        }
+    }
+
+    /** Returns the hash id of FILE if the cache still holds it, and
+     *  otherwise null, without reading the file.
+     * @param file */
+    String cached(File file) {
+        Entry entry = fresh(file);
+        return entry == null ? null : entry.hash;
+    }
+
+    /** Records that FILE, just written or read, has the hash id HASH.
+     * @param file
+     * @param hash */
+    void record(File file, String hash) {
+        Entry entry = stat(file);
+        if (entry != null) {
+            entry.hash = hash;
+            put(file, entry);
+        }
+    }
+
+    /** Forgets FILE, which this command is deleting.
+     * @param file */
+    void forget(File file) {
+        if (entries().remove(key(file)) != null) {
+            _Dirty = true;
+        }
+    }
+
+    /** Returns the cached entry of FILE if its stat data still matches and
+     *  is not racy, and otherwise null.  A file found fresh, or hashed, is
+     *  not stat'ed again by the same command. */
+    private Entry fresh(File file) {
+        Entry entry = entries().get(key(file));
+        if (entry == null) {
+            return null;
+        }
+        if (entry.seen) {
+            return entry;
+        }
+        Entry now = stat(file);
+        if (now == null || now.size != entry.size
+                || now.mtime != entry.mtime || now.inode != entry.inode
+                || (!entry.current
+                    && entry.mtime + RACY_MILLIS > entry.checked)) {
+            return null;
+        }
+        entry.seen = true;
+        return entry;
+    }
+
+    /** Records ENTRY for FILE. */
+    private void put(File file, Entry entry) {
+        if (entry != null) {
+            entry.current = true;
+            entry.seen = true;
+            entries().put(key(file), entry);
+            _Dirty = true;
+        }
+    }
+
+    /** Returns a new entry holding the current stat data of FILE, or null
+     *  if FILE cannot be read. */
+    private static Entry stat(File file) {
+        Path path = file.toPath();
+        Entry entry = new Entry();
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(path, BasicFileAttributes.class);
+            entry.size = attrs.size();
+            entry.mtime = attrs.lastModifiedTime().toMillis();
+            Object key = attrs.fileKey();
+            entry.inode = key == null ? 0 : key.hashCode();
+        } catch (IOException excp) {
+            return null;
+        }
+        entry.checked = System.currentTimeMillis();
+        return entry;
+    }
+
+    /** Returns the path of FILE relative to the working directory. */
+    private String key(File file) {
+        return _CWD.relativize(file.toPath().toAbsolutePath()).toString();
+    }
+
+    /** Returns the entries, reading the index file on first use. */
+    private Map<String, Entry> entries() {
+        if (_Entries == null) {
+            synchronized (this) {
+                if (_Entries == null) {
+                    _Entries = read();
+                }
+            }
+        }
+        return _Entries;
+    }
+
+    /** Returns the entries of the index file, or none if it is missing or
+     *  unreadable. */
+    private ConcurrentHashMap<String, Entry> read() {
+        ConcurrentHashMap<String, Entry> result = new ConcurrentHashMap<>();
+        if (!_File.isFile()) {
+            return result;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(_File)))) {
+            if (in.readInt() != VERSION) {
+                return result;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String key = in.readUTF();
+                Entry entry = new Entry();
+                entry.size = in.readLong();
+                entry.mtime = in.readLong();
+                entry.inode = in.readLong();
+                entry.checked = in.readLong();
+                entry.hash = in.readUTF();
+                result.put(key, entry);
+            }
+        } catch (EOFException excp) {
+            result.clear();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Ends a command: from now on every entry is stat'ed again and held
+     *  to the racy check before it is trusted. */
+    void expire() {
+        if (_Entries != null) {
+            for (Entry entry : _Entries.values()) {
+                entry.current = false;
+                entry.seen = false;
+            }
+        }
+    }
+
+    /** Ends the command, as a later command in this process (see
+     *  Daemon.java) must find it ended, and writes the index file if
+     *  anything changed since it was read. */
+    void save() {
+        expire();
+        if (!_Dirty) {
+            return;
+        }
+        File tmp = new File(_File.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(_Entries.size());
+            for (Map.Entry<String, Entry> i : _Entries.entrySet()) {
+                Entry entry = i.getValue();
+                out.writeUTF(i.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.inode);
+                out.writeLong(entry.checked);
+                out.writeUTF(entry.hash);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!tmp.renameTo(_File)) {
+            throw new IllegalArgumentException("cannot write index");
+        }
+        _Dirty = false;
+    }
+
+    /** What the index knows of one file. */
+    private static class Entry {
+        /** Size in bytes. */
+        private long size;
+        /** Modification time in milliseconds. */
+        private long mtime;
+        /** Inode number, or another identity of the file. */
+        private long inode;
+        /** Time the file was hashed. */
+        private long checked;
+        /** Hash id of the content. */
+        private String hash;
+        /** True iff hashed by this command, and so not racy. */
+        private boolean current;
+        /** True iff this command found the stat data to match, or hashed
+         *  the file. */
+        private volatile boolean seen;
+    }
+
+    /** Working directory. */
+    private Path _CWD;
+    /** The index file. */
+    private File _File;
+    /** Cached entries by path, read on first use. */
+    private volatile ConcurrentHashMap<String, Entry> _Entries;
+    /** True iff the entries changed since they were read. */
+    private volatile boolean _Dirty;
+}
@@ -0,0 +1,291 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A fast LZ77 codec in the style of LZ4.  Data is cut into blocks of
+ *  BLOCK_SIZE bytes.  Each block is written as its raw length, its
+ *  compressed length (0 when the block did not shrink and is kept as is)
+ *  and the compressed bytes; a raw length of 0 ends the stream.
+ *  A compressed block is a series of sequences, each a token byte whose
+ *  high and low four bits give the literal length and the match length
+ *  less MIN_MATCH, the literals, and a two-byte little-endian offset back
+ *  to the match.  Lengths of 15 or more continue in following bytes,
+ *  each adding up to 255.  The last sequence has literals only.
+ *  @author Jenna Jang
+ */
+class LzCodec {
+
+    /** Bytes per block. */
+    static final int BLOCK_SIZE = 1 << 16;
+    /** Shortest match encoded. */
+    private static final int MIN_MATCH = 4;
+    /** Farthest back a match may start. */
+    private static final int MAX_OFFSET = 0xffff;
+    /** Log of the number of slots in the match-finding table. */
+    private static final int HASH_LOG = 14;
+
+    /** Returns a bound on the compressed size of LEN bytes. */
+    static int maxCompressedLength(int len) {
+        return len + len / 255 + 16;
+    }
+
+    /** Compresses the first LEN bytes of SRC into DST, which must have
+     *  room for maxCompressedLength(LEN) bytes, and returns the number of
+     *  bytes written.  TABLE is scratch space of 1 << HASH_LOG ints. */
+    static int compress(byte[] src, int len, byte[] dst, int[] table) {
+        Arrays.fill(table, 0);
+        int anchor = 0, i = 0, op = 0;
+        while (i + MIN_MATCH <= len) {
+            int h = hash(src, i);
+            int ref = table[h] - 1;
+            table[h] = i + 1;
+            if (ref < 0 || i - ref > MAX_OFFSET || !same4(src, ref, i)) {
+                i += 1;
+                continue;
+            }
+            int matchLen = MIN_MATCH;
+            while (i + matchLen < len && src[ref + matchLen]
+                   == src[i + matchLen]) {
+                matchLen += 1;
+            }
+            int token = op;
+            op = sequence(src, anchor, i - anchor, dst, op);
+            dst[token] |= (byte) Math.min(matchLen - MIN_MATCH, 15);
+            dst[op++] = (byte) (i - ref);
+            dst[op++] = (byte) ((i - ref) >>> 8);
+            if (matchLen - MIN_MATCH >= 15) {
+                op = length(matchLen - MIN_MATCH - 15, dst, op);
+            }
+            i += matchLen;
+            anchor = i;
+        }
+        return sequence(src, anchor, len - anchor, dst, op);
+    }
+
+    /** Decompresses the SRCLEN bytes of SRC into DST, which must have room
+     *  for them, and returns the number of bytes produced. */
+    static int decompress(byte[] src, int srcLen, byte[] dst) {
+        int ip = 0, op = 0;
+        while (ip < srcLen) {
+            int token = src[ip++] & 0xff;
+            int litLen = token >>> 4;
+            if (litLen == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xff;
+                    litLen += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, ip, dst, op, litLen);
+            ip += litLen;
+            op += litLen;
+            if (ip >= srcLen) {
+                break;
+            }
+            int offset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+            ip += 2;
+            int matchLen = token & 0xf;
+            if (matchLen == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xff;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            if (offset >= matchLen) {
+                System.arraycopy(dst, op - offset, dst, op, matchLen);
+                op += matchLen;
+            } else {
+                for (int from = op - offset; matchLen > 0; matchLen -= 1) {
+                    dst[op++] = dst[from++];
+                }
+            }
+        }
+        return op;
+    }
+
+    /** Writes a token for LITLEN literals starting at SRC[START] to DST at
+     *  OP, followed by the literals, and returns the new output position.
+     *  The match length of the token is left 0 for the caller to fill. */
+    private static int sequence(byte[] src, int start, int litLen,
+                                byte[] dst, int op) {
+        dst[op++] = (byte) (Math.min(litLen, 15) << 4);
+        if (litLen >= 15) {
+            op = length(litLen - 15, dst, op);
+        }
+        System.arraycopy(src, start, dst, op, litLen);
+        return op + litLen;
+    }
+
+    /** Writes the length continuation N to DST at OP and returns the new
+     *  output position. */
+    private static int length(int n, byte[] dst, int op) {
+        while (n >= 255) {
+            dst[op++] = (byte) 255;
+            n -= 255;
+        }
+        dst[op++] = (byte) n;
+        return op;
+    }
+
+    /** Returns the table slot for the four bytes of SRC at I. */
+    private static int hash(byte[] src, int i) {
+        int v = (src[i] & 0xff) | (src[i + 1] & 0xff) << 8
+            | (src[i + 2] & 0xff) << 16 | (src[i + 3] & 0xff) << 24;
+        return (v * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    /** Returns true iff the four bytes of SRC at A and B are equal. */
+    private static boolean same4(byte[] src, int a, int b) {
+        return src[a] == src[b] && src[a + 1] == src[b + 1]
+            && src[a + 2] == src[b + 2] && src[a + 3] == src[b + 3];
+    }
+
+    /** A stream that compresses what is written to it, block by block. */
+    static class Output extends OutputStream {
+
+        /** A stream compressing into OUT. */
+        Output(OutputStream out) {
+            _Out = new DataOutputStream(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_Len == BLOCK_SIZE) {
+                flushBlock();
+            }
+            _Block[_Len++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_Len == BLOCK_SIZE) {
+                    flushBlock();
+                }
+                int n = Math.min(len, BLOCK_SIZE - _Len);
+                System.arraycopy(b, off, _Block, _Len, n);
+                _Len += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushBlock();
+            _Out.writeInt(0);
+            _Out.close();
+        }
+
+        /** Writes out the buffered block, if any. */
+        private void flushBlock() throws IOException {
+            if (_Len == 0) {
+                return;
+            }
+            int n = compress(_Block, _Len, _Packed, _Table);
+            _Out.writeInt(_Len);
+            if (n < _Len) {
+                _Out.writeInt(n);
+                _Out.write(_Packed, 0, n);
+            } else {
+                _Out.writeInt(0);
+                _Out.write(_Block, 0, _Len);
+            }
+            _Len = 0;
+        }
+
+        /** Where compressed blocks go. */
+        private DataOutputStream _Out;
+        /** The block being filled. */
+        private byte[] _Block = new byte[BLOCK_SIZE];
+        /** Bytes in _Block. */
+        private int _Len;
+        /** A compressed block. */
+        private byte[] _Packed = new byte[maxCompressedLength(BLOCK_SIZE)];
+        /** Match-finding table. */
+        private int[] _Table = new int[1 << HASH_LOG];
+    }
+
+    /** A stream of the bytes decompressed from another stream. */
+    static class Input extends InputStream {
+
+        /** A stream decompressing IN. */
+        Input(InputStream in) {
+            _In = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (_Pos == _Len && !nextBlock()) {
+                return -1;
+            }
+            return _Block[_Pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (_Pos == _Len && !nextBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, _Len - _Pos);
+            System.arraycopy(_Block, _Pos, b, off, n);
+            _Pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _In.close();
+        }
+
+        /** Reads the next block, returning false at the end of the
+         *  stream. */
+        private boolean nextBlock() throws IOException {
+            if (_Done) {
+                return false;
+            }
+            int rawLen;
+            try {
+                rawLen = _In.readInt();
+            } catch (EOFException excp) {
+                rawLen = 0;
+            }
+            if (rawLen == 0) {
+                _Done = true;
+                return false;
+            }
+            int packedLen = _In.readInt();
+            if (packedLen == 0) {
+                _In.readFully(_Block, 0, rawLen);
+            } else {
+                _In.readFully(_Packed, 0, packedLen);
+                decompress(_Packed, packedLen, _Block);
+            }
+            _Len = rawLen;
+            _Pos = 0;
+            return true;
+        }
+
+        /** Source of compressed blocks. */
+        private DataInputStream _In;
+        /** The current decompressed block. */
+        private byte[] _Block = new byte[BLOCK_SIZE];
+        /** A compressed block. */
+        private byte[] _Packed = new byte[maxCompressedLength(BLOCK_SIZE)];
+        /** Bytes in _Block, and the next one to read. */
+        private int _Len, _Pos;
+        /** True once the end of stream is read. */
+        private boolean _Done;
+    }
+}
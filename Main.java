@@ -2,7 +2,6 @@ package gitlet;
 
 
 
-import java.io.File;
 import java.io.IOException;
 
 
@@ -20,37 +19,66 @@ public class Main {
      *  */
 
     public static void main(String... args) throws IOException {
-        if (args.length == 0) {
-            System.out.println("Please enter a command.");
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                Daemon.main(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("batch")) {
+                Batch.main(read(), args);
+                return;
+            }
+            run(args.length == 0 ? null : read(), args);
+        } catch (GitletException excp) {
+            if (excp.getMessage() != null) {
+                System.out.println(excp.getMessage());
+            }
             System.exit(0);
         }
-        Methods methods = read();
+    }
+
+    /** Runs the command ARGS on METHODS, the repository in the current
+     *  directory or null if there is none, and saves it.  A command that
+     *  fails throws a GitletException whose message, if any, is to be
+     *  printed, and leaves the repository unsaved.
+     * @param methods
+     * @param args */
+    static void run(Methods methods, String... args) throws IOException {
+        save(dispatch(methods, args));
+    }
+
+    /** Runs the command ARGS on METHODS, as run does, but without saving,
+     *  and returns the repository, which init makes.
+     * @param methods
+     * @param args */
+    static Methods dispatch(Methods methods, String... args)
+        throws IOException {
+        if (args.length == 0) {
+            throw Utils.error("Please enter a command.");
+        }
         if (methods == null && !args[0].equals("init")) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw Utils.error("Not in an initialized Gitlet directory.");
         }
         if (args[0].equals("init")) {
             if (methods == null) {
-                methods = new Methods();
+                methods = new Methods(args);
             } else {
-                System.out.println("A Gitlet version-control system "
+                throw Utils.error("A Gitlet version-control system "
                         + "already exists in the current directory.");
-                System.exit(0);
             }
         } else if (args[0].equals("add")) {
-            String filename = args[1];
-            methods.add(filename);
+            methods.add(args);
         } else if (args[0].equals("commit")) {
             String message = args[1];
             methods.commit(message);
         } else if (args[0].equals("rm")) {
             methods.remove(args[1]);
         } else if (args[0].equals("log")) {
-            methods.log();
+            methods.log(args);
         } else if (args[0].equals("global-log")) {
-            methods.globalLog();
+            methods.globalLog(args);
         } else if (args[0].equals("find")) {
-            methods.find(args[1]);
+            methods.find(args);
         } else if (args[0].equals("status")) {
             methods.status();
         } else if (args[0].equals("checkout")) {
@@ -60,9 +88,18 @@ public class Main {
         } else if (args[0].equals("rm-branch")) {
             methods.removeBranch(args[1]);
         } else if (args[0].equals("reset")) {
-            methods.reset(args[1]);
+            methods.reset(args[1], args.length > 2
+                    && args[2].equals("--stats"));
         } else if (args[0].equals("merge")) {
             methods.merge(args[1]);
+        } else if (args[0].equals("pack-refs")) {
+            methods.packRefs();
+        } else if (args[0].equals("repack")) {
+            methods.repack();
+        } else if (args[0].equals("migrate")) {
+            methods.migrate();
+        } else if (args[0].equals("count-objects")) {
+            methods.countObjects();
         } else if (args[0].equals("add-remote")) {
             methods.addRemote(args);
         } else if (args[0].equals("rm-remote")) {
@@ -74,28 +111,16 @@ public class Main {
         } else if (args[0].equals("pull")) {
             methods.fetch(args[1], args[2]);
         } else {
-            System.out.println("No command with that name exists.");
-            System.exit(0);
+            throw Utils.error("No command with that name exists.");
         }
-        save(methods);
+        return methods;
     }
 
     private static Methods read() {
-        Methods methods = null;
-        File reading = join(".gitlet", "data");
-
-        if (reading.exists()) {
-            methods = Utils.readObject(reading, Methods.class);
-        }
-        return methods;
+        return Methods.load(join(".gitlet"));
     }
     private static void save(Methods methods) throws IOException {
-        File saving = join(".gitlet", "data");
-
-        if (!saving.exists()) {
-            saving.createNewFile();
-        }
-        Utils.writeObject(saving, methods);
+        methods.save();
     }
 }
 
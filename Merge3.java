@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** A three-way merge of the lines of two versions of a file, ours and
+ *  theirs, with the version both came from, as diff3 does it.  Each
+ *  version is diffed against the base; base lines kept by both, at the
+ *  same places relative to each other, are stable, and split the three
+ *  into chunks.  A chunk changed by one side takes that side's lines, one
+ *  changed alike by both takes either, and only a chunk changed
+ *  differently by the two is written between conflict markers.  The
+ *  result is written out chunk by chunk as the chunks are found.
+ *  @author Jenna Jang
+ */
+class Merge3 {
+
+    /** Marks the start of a conflict and of our lines. */
+    static final byte[] OURS = "<<<<<<< HEAD\n"
+        .getBytes(StandardCharsets.UTF_8);
+    /** Separates our lines from theirs. */
+    static final byte[] SEPARATOR = "=======\n"
+        .getBytes(StandardCharsets.UTF_8);
+    /** Marks the end of their lines and of a conflict. */
+    static final byte[] THEIRS = ">>>>>>>\n"
+        .getBytes(StandardCharsets.UTF_8);
+
+    /** Writes to OUT the merge of OURS and THEIRS, each changed from BASE,
+     *  and returns the number of conflicts in it.
+     * @param base
+     * @param ours
+     * @param theirs
+     * @param out */
+    static int merge(byte[] base, byte[] ours, byte[] theirs,
+                     OutputStream out) throws IOException {
+        int[] s0 = Pack.starts(base, 0, base.length),
+            s1 = Pack.starts(ours, 0, ours.length),
+            s2 = Pack.starts(theirs, 0, theirs.length);
+        int n0 = s0.length - 1, n1 = s1.length - 1, n2 = s2.length - 1;
+        int[] m1 = matches(base, ours, n0), m2 = matches(base, theirs, n0);
+        int conflicts = 0;
+        int i = 0, a = 0, b = 0;
+        while (i < n0 || a < n1 || b < n2) {
+            int j = i;
+            while (j < n0 && m1[j] == a + j - i && m2[j] == b + j - i) {
+                j += 1;
+            }
+            if (j > i) {
+                out.write(base, s0[i], s0[j] - s0[i]);
+                a += j - i;
+                b += j - i;
+                i = j;
+                continue;
+            }
+            while (j < n0 && (m1[j] < 0 || m2[j] < 0)) {
+                j += 1;
+            }
+            int a1 = j < n0 ? m1[j] : n1, b1 = j < n0 ? m2[j] : n2;
+            boolean oursKept = Arrays.equals(base, s0[i], s0[j],
+                                             ours, s1[a], s1[a1]);
+            boolean theirsKept = Arrays.equals(base, s0[i], s0[j],
+                                               theirs, s2[b], s2[b1]);
+            if (oursKept) {
+                out.write(theirs, s2[b], s2[b1] - s2[b]);
+            } else if (theirsKept || Arrays.equals(ours, s1[a], s1[a1],
+                                                   theirs, s2[b], s2[b1])) {
+                out.write(ours, s1[a], s1[a1] - s1[a]);
+            } else {
+                out.write(OURS);
+                lines(out, ours, s1[a], s1[a1]);
+                out.write(SEPARATOR);
+                lines(out, theirs, s2[b], s2[b1]);
+                out.write(THEIRS);
+                conflicts += 1;
+            }
+            i = j;
+            a = a1;
+            b = b1;
+        }
+        return conflicts;
+    }
+
+    /** Returns, for each of the N lines of BASE, the line of OTHER it is
+     *  kept as, or -1 if OTHER dropped or changed it. */
+    private static int[] matches(byte[] base, byte[] other, int n) {
+        Diff diff = new Diff(Diff.Algorithm.MYERS);
+        diff.setSequences(ByteBuffer.wrap(base), ByteBuffer.wrap(other));
+        int[] result = new int[n];
+        Arrays.fill(result, -1);
+        int[] runs = diff.commonSubsequence();
+        for (int k = 0; k < runs.length; k += 3) {
+            for (int j = 0; j < runs[k + 2]; j += 1) {
+                result[runs[k] + j] = runs[k + 1] + j;
+            }
+        }
+        return result;
+    }
+
+    /** Writes bytes FROM up to TO of DATA to OUT, ending them with a
+     *  newline if they are not empty and lack one, so a marker after them
+     *  starts a line. */
+    private static void lines(OutputStream out, byte[] data, int from,
+                              int to) throws IOException {
+        out.write(data, from, to - from);
+        if (to > from && data[to - 1] != '\n') {
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** A benchmark of three-way merging, which may be invoked as
+ *      java gitlet.MergeBench [DIRECTORY [ROUNDS]]
+ *  Every text file under DIRECTORY (default the current one) is the base
+ *  of ROUNDS (default 20) merges, in each of which both sides make one to
+ *  three edits of up to five lines at random places, as two branches
+ *  working on the same file would.  It reports how many of the merges
+ *  Merge3 completes without conflicts, all of which a whole-file merge
+ *  would have marked as conflicts, how many lines its conflicts hold
+ *  compared with the whole files, and the rate at which it merges.
+ *  @author Jenna Jang
+ */
+public class MergeBench {
+
+    /** Runs the benchmark; ARGS may give the directory and the number of
+     *  merges per file. */
+    public static void main(String... args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : ".");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        ArrayList<byte[]> corpus = new ArrayList<byte[]>();
+        collect(dir, corpus);
+        Random random = new Random(23);
+        int merges = 0, clean = 0, conflicts = 0;
+        long conflictLines = 0, wholeLines = 0, bytes = 0, nanos = 0;
+        Counter out = new Counter();
+        for (byte[] base : corpus) {
+            List<String> lines = lines(base);
+            for (int i = 0; i < rounds; i += 1) {
+                List<String> ours = edit(random, lines, "ours"),
+                    theirs = edit(random, lines, "theirs");
+                byte[] a = join(ours), b = join(theirs);
+                out.lines = 0;
+                out.inConflict = false;
+                long start = System.nanoTime();
+                int n = Merge3.merge(base, a, b, out);
+                nanos += System.nanoTime() - start;
+                merges += 1;
+                clean += n == 0 ? 1 : 0;
+                conflicts += n;
+                conflictLines += out.lines;
+                wholeLines += ours.size() + theirs.size();
+                bytes += base.length + a.length + b.length;
+            }
+        }
+        System.out.printf("files %d, merges %d%n", corpus.size(), merges);
+        System.out.printf("clean merges    %8d (%.1f%%; whole-file: 0)%n",
+                clean, 100.0 * clean / Math.max(merges, 1));
+        System.out.printf("conflicts       %8d%n", conflicts);
+        System.out.printf("conflict lines  %8d (whole-file: %d, %.2f%%)%n",
+                conflictLines, wholeLines,
+                100.0 * conflictLines / Math.max(wholeLines, 1));
+        System.out.printf("merge rate      %8.1f MB/s (%.3f ms/merge)%n",
+                bytes / 1e6 / (nanos / 1e9), nanos / 1e6 / merges);
+    }
+
+    /** Adds the contents of every text file under DIR to CORPUS, skipping
+     *  repositories. */
+    private static void collect(File dir, List<byte[]> corpus)
+        throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                if (!file.getName().equals(".git")
+                    && !file.getName().equals(".gitlet")) {
+                    collect(file, corpus);
+                }
+            } else if (file.isFile()) {
+                byte[] data = Files.readAllBytes(file.toPath());
+                boolean text = data.length > 0;
+                for (int i = 0; text && i < data.length; i += 1) {
+                    text = data[i] != 0;
+                }
+                if (text) {
+                    corpus.add(data);
+                }
+            }
+        }
+    }
+
+    /** Returns the lines of DATA, each with its newline. */
+    private static List<String> lines(byte[] data) {
+        ArrayList<String> result = new ArrayList<String>();
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        for (int start = 0; start < text.length();) {
+            int end = text.indexOf('\n', start) + 1;
+            end = end == 0 ? text.length() : end;
+            result.add(text.substring(start, end));
+            start = end;
+        }
+        return result;
+    }
+
+    /** Returns the bytes of LINES joined. */
+    private static byte[] join(List<String> lines) {
+        return String.join("", lines).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Returns LINES with one to three hunks of up to five lines changed,
+     *  inserted or deleted at random places, using RANDOM, the new lines
+     *  naming SIDE. */
+    private static List<String> edit(Random random, List<String> lines,
+                                     String side) {
+        ArrayList<String> result = new ArrayList<String>(lines);
+        for (int n = 1 + random.nextInt(3); n > 0; n -= 1) {
+            int at = random.nextInt(result.size() + 1);
+            int hunk = Math.min(1 + random.nextInt(5), result.size() - at);
+            int kind = random.nextInt(3);
+            if (kind != 0) {
+                result.subList(at, at + hunk).clear();
+            }
+            if (kind != 1) {
+                for (int k = 0; k < Math.max(hunk, 1); k += 1) {
+                    result.add(at, "    // " + side + " "
+                               + random.nextInt() + "\n");
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Discards what is written to it, counting the lines written between
+     *  conflict markers. */
+    private static class Counter extends OutputStream {
+        @Override
+        public void write(int b) {
+            if (b == '\n' && inConflict) {
+                lines += 1;
+            }
+        }
+
+        @Override
+        public void write(byte[] data, int off, int len) {
+            if (data == Merge3.OURS) {
+                inConflict = true;
+            } else if (data == Merge3.THEIRS) {
+                inConflict = false;
+            } else if (inConflict && data != Merge3.SEPARATOR) {
+                for (int i = off; i < off + len; i += 1) {
+                    write(data[i]);
+                }
+            }
+        }
+
+        /** Lines written between conflict markers. */
+        private long lines;
+        /** True between conflict markers. */
+        private boolean inConflict;
+    }
+}
@@ -0,0 +1,469 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** An index of the commit messages of a repository, which answers find
+ *  without reading any commit objects.  The messages are those of the
+ *  records of the commit journal, numbered in order.  .gitlet/message-index
+ *  maps keys to the sorted numbers of the records they occur in: "m" and a
+ *  hash of each whole message, "t" and each word, lower-cased, and, if
+ *  ngrams are on, "g" and each run of GRAM characters.  It covers the
+ *  records up to some point of the journal; later ones, the tail, are
+ *  scanned.  The index is rebuilt once the tail grows past a sixteenth of
+ *  what it covers, so the cost of keeping it up stays constant per commit.
+ *  The index file holds MAGIC, the flags, the number of records N and
+ *  bytes of the journal it covers, the number of keys K, the N record
+ *  offsets in the journal as longs,
+ *  K + 1 key offsets and K + 1 postings offsets as ints, the keys in
+ *  unsigned byte order, and the postings, each a count and the gaps
+ *  between record numbers as varints.
+ *  @author Jenna Jang
+ */
+class MessageIndex {
+
+    /** First bytes of the index file. */
+    private static final int MAGIC = 0x474d4932;
+    /** Flag of an index holding n-grams. */
+    private static final int NGRAMS = 1;
+    /** Bytes before the record offsets in the index file. */
+    private static final int HEADER = 24;
+    /** Characters in an n-gram. */
+    static final int GRAM = 3;
+    /** Records the tail may hold before the index is rebuilt, however
+     *  few the index covers. */
+    static final int MIN_TAIL = 1024;
+
+    /** The message index of the repository kept in GITLETDIR, whose
+     *  commits are in JOURNAL, holding n-grams iff NGRAMS. */
+    MessageIndex(File gitletDir, CommitJournal journal, boolean ngrams) {
+        _Journal = journal;
+        _File = Utils.join(gitletDir, "message-index");
+        _Ngrams = ngrams;
+    }
+
+    /** Returns the ids of the commits whose message is MESSAGE, in the
+     *  order they were made.
+     * @param message */
+    List<String> exact(String message) {
+        open();
+        List<String> result = new ArrayList<String>();
+        for (int rec : postings("m" + digest(message))) {
+            CommitJournal.Entry record = record(rec);
+            if (record.message.equals(message)) {
+                result.add(record.hash);
+            }
+        }
+        for (CommitJournal.Entry record : tail()) {
+            if (record.message.equals(message)) {
+                result.add(record.hash);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ids of the commits whose message has every word of
+     *  QUERY, ignoring case, in the order they were made.
+     * @param query */
+    List<String> words(String query) {
+        open();
+        Set<String> words = tokens(query);
+        List<String> result = new ArrayList<String>();
+        if (words.isEmpty()) {
+            return result;
+        }
+        int[] found = null;
+        for (String word : words) {
+            found = intersect(found, postings("t" + word));
+        }
+        for (int rec : found) {
+            result.add(id(rec));
+        }
+        for (CommitJournal.Entry record : tail()) {
+            if (tokens(record.message).containsAll(words)) {
+                result.add(record.hash);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ids of the commits whose message contains TEXT, in the
+     *  order they were made.  Without n-grams, or for TEXT shorter than
+     *  GRAM characters, every message is read, though no commit is.
+     * @param text */
+    List<String> substring(String text) {
+        open();
+        List<String> result = new ArrayList<String>();
+        if (_Ngrams && text.length() >= GRAM) {
+            int[] found = null;
+            for (String gram : grams(text)) {
+                found = intersect(found, postings("g" + gram));
+            }
+            for (int rec : found) {
+                CommitJournal.Entry record = record(rec);
+                if (record.message.contains(text)) {
+                    result.add(record.hash);
+                }
+            }
+        } else {
+            for (int rec = 0; rec < _Covered; rec += 1) {
+                CommitJournal.Entry record = record(rec);
+                if (record.message.contains(text)) {
+                    result.add(record.hash);
+                }
+            }
+        }
+        for (CommitJournal.Entry record : tail()) {
+            if (record.message.contains(text)) {
+                result.add(record.hash);
+            }
+        }
+        return result;
+    }
+
+    /** Rebuilds the index if the tail has grown too long or the index is
+     *  out of date.  Called once the journal is saved. */
+    void save() {
+        if (_Journal.missing()) {
+            return;
+        }
+        _Index = null;
+        open();
+        int tail = _Journal.pending().size();
+        for (long at = _CoveredBytes, end = _Journal.end(); at < end;
+             at = _Journal.next(at)) {
+            tail += 1;
+        }
+        if (tail > Math.max(MIN_TAIL, _Covered / 16)) {
+            rebuild();
+        }
+        _Index = null;
+    }
+
+    /** Writes a new index covering the whole journal. */
+    private void rebuild() {
+        ArrayList<Long> offsets = new ArrayList<Long>();
+        HashMap<String, Postings> keys = new HashMap<String, Postings>();
+        long end = _Journal.end();
+        int rec = 0;
+        for (long at = 0; at < end; at = _Journal.next(at), rec += 1) {
+            offsets.add(at);
+            int n = rec;
+            for (String key : keys(_Journal.read(at).message)) {
+                keys.computeIfAbsent(key, k -> new Postings()).add(n);
+            }
+        }
+        Postings[] sorted = keys.values().toArray(new Postings[0]);
+        for (Map.Entry<String, Postings> entry : keys.entrySet()) {
+            entry.getValue()._Key =
+                entry.getKey().getBytes(StandardCharsets.UTF_8);
+        }
+        keys = null;
+        Arrays.sort(sorted, (a, b) -> Arrays.compareUnsigned(a._Key, b._Key));
+        File tmp = new File(_File.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_Ngrams ? NGRAMS : 0);
+            out.writeInt(offsets.size());
+            out.writeLong(end);
+            out.writeInt(sorted.length);
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            byte[][] postings = new byte[sorted.length][];
+            int at = 0;
+            for (Postings key : sorted) {
+                out.writeInt(at);
+                at += key._Key.length;
+            }
+            out.writeInt(at);
+            at = 0;
+            for (int i = 0; i < sorted.length; i += 1) {
+                postings[i] = sorted[i].encode();
+                out.writeInt(at);
+                at += postings[i].length;
+            }
+            out.writeInt(at);
+            for (Postings key : sorted) {
+                out.write(key._Key);
+            }
+            for (byte[] posting : postings) {
+                out.write(posting);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!tmp.renameTo(_File)) {
+            throw new IllegalArgumentException("cannot write message-index");
+        }
+    }
+
+    /** Returns the keys of a record holding MESSAGE. */
+    private Collection<String> keys(String message) {
+        Set<String> result = new LinkedHashSet<String>();
+        result.add("m" + digest(message));
+        for (String word : tokens(message)) {
+            result.add("t" + word);
+        }
+        if (_Ngrams) {
+            for (String gram : grams(message)) {
+                result.add("g" + gram);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the key hash of the whole message MESSAGE, a 64-bit
+     *  FNV-1a hash; records found by it are checked against MESSAGE. */
+    private static String digest(String message) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < message.length(); i += 1) {
+            h = (h ^ message.charAt(i)) * 0x100000001b3L;
+        }
+        return Long.toHexString(h);
+    }
+
+    /** Returns the words of TEXT: its runs of letters and digits, in lower
+     *  case. */
+    static Set<String> tokens(String text) {
+        Set<String> result = new LinkedHashSet<String>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i += 1) {
+            boolean inWord = i < text.length()
+                && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                result.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the distinct runs of GRAM characters in TEXT. */
+    static Set<String> grams(String text) {
+        Set<String> result = new LinkedHashSet<String>();
+        for (int i = 0; i + GRAM <= text.length(); i += 1) {
+            result.add(text.substring(i, i + GRAM));
+        }
+        return result;
+    }
+
+    /** Returns the numbers of the records holding KEY, in order. */
+    private int[] postings(String key) {
+        if (_Index == null) {
+            return new int[0];
+        }
+        byte[] target = key.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = _Keys - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareKey(mid, target);
+            if (c == 0) {
+                return decode(_PostingsAt + _Index.getInt(
+                        _PostingStarts + 4 * mid));
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return new int[0];
+    }
+
+    /** Compares key number K of the index with TARGET. */
+    private int compareKey(int k, byte[] target) {
+        int start = _KeysAt + _Index.getInt(_KeyStarts + 4 * k);
+        int len = _Index.getInt(_KeyStarts + 4 * (k + 1))
+            - _Index.getInt(_KeyStarts + 4 * k);
+        for (int i = 0; i < len && i < target.length; i += 1) {
+            int c = (_Index.get(start + i) & 0xff) - (target[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - target.length;
+    }
+
+    /** Returns the record numbers in the postings at offset AT. */
+    private int[] decode(int at) {
+        ByteBuffer in = _Index.duplicate();
+        in.position(at);
+        int[] result = new int[varint(in)];
+        int rec = 0;
+        for (int i = 0; i < result.length; i += 1) {
+            rec += varint(in);
+            result[i] = rec;
+        }
+        return result;
+    }
+
+    /** Returns the varint read from IN. */
+    private static int varint(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Returns the numbers in both A and B, or B if A is null. */
+    private static int[] intersect(int[] a, int[] b) {
+        if (a == null) {
+            return b;
+        }
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n++] = a[i];
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Returns the commit id of record number REC of the part of the
+     *  journal the index covers. */
+    private String id(int rec) {
+        return _Journal.id(_Index.getLong(HEADER + 8 * rec));
+    }
+
+    /** Returns record number REC of the part of the journal the index
+     *  covers. */
+    private CommitJournal.Entry record(int rec) {
+        return _Journal.read(_Index.getLong(HEADER + 8 * rec));
+    }
+
+    /** Returns the records the index does not cover: those in the journal
+     *  after it, then those not yet saved. */
+    private List<CommitJournal.Entry> tail() {
+        List<CommitJournal.Entry> result =
+            new ArrayList<CommitJournal.Entry>();
+        for (long at = _CoveredBytes, end = _Journal.end(); at < end;
+             at = _Journal.next(at)) {
+            result.add(_Journal.read(at));
+        }
+        result.addAll(_Journal.pending());
+        return result;
+    }
+
+    /** Maps the index file, if not done already.  An index in another
+     *  format, built with n-grams on when they are now off or the other
+     *  way round, or covering more than the journal holds, is ignored
+     *  until it is rebuilt. */
+    private void open() {
+        if (_Index != null) {
+            return;
+        }
+        _Index = _File.isFile() ? map(_File) : null;
+        if (_Index != null && (_Index.getInt(0) != MAGIC
+                || _Index.getInt(4) != (_Ngrams ? NGRAMS : 0)
+                || _Index.getLong(12) > _Journal.end())) {
+            _Index = null;
+        }
+        if (_Index == null) {
+            _Covered = _Keys = 0;
+            _CoveredBytes = 0;
+            return;
+        }
+        _Covered = _Index.getInt(8);
+        _CoveredBytes = _Index.getLong(12);
+        _Keys = _Index.getInt(20);
+        _KeyStarts = HEADER + 8 * _Covered;
+        _PostingStarts = _KeyStarts + 4 * (_Keys + 1);
+        _KeysAt = _PostingStarts + 4 * (_Keys + 1);
+        _PostingsAt = _KeysAt + _Index.getInt(_KeyStarts + 4 * _Keys);
+    }
+
+    /** Returns FILE mapped into memory. */
+    private static ByteBuffer map(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    in.length());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A growing list of record numbers. */
+    private static class Postings {
+        /** Adds record number REC, which is above all those added. */
+        void add(int rec) {
+            if (_N == _Recs.length) {
+                _Recs = Arrays.copyOf(_Recs, 2 * _N);
+            }
+            _Recs[_N++] = rec;
+        }
+
+        /** Returns the count and gaps between the records as varints. */
+        byte[] encode() {
+            byte[] result = new byte[5 * (_N + 1)];
+            int at = putVarint(result, 0, _N);
+            for (int i = 0, last = 0; i < _N; last = _Recs[i], i += 1) {
+                at = putVarint(result, at, _Recs[i] - last);
+            }
+            return Arrays.copyOf(result, at);
+        }
+
+        /** Writes V into OUT at AT and returns the new position. */
+        private static int putVarint(byte[] out, int at, int v) {
+            while ((v & ~0x7f) != 0) {
+                out[at++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            out[at++] = (byte) v;
+            return at;
+        }
+
+        /** The key, in UTF-8. */
+        private byte[] _Key;
+        /** The records. */
+        private int[] _Recs = new int[4];
+        /** Number of records. */
+        private int _N;
+    }
+
+    /** The journal of the commits indexed. */
+    private CommitJournal _Journal;
+    /** The index file. */
+    private File _File;
+    /** True iff n-grams are indexed. */
+    private boolean _Ngrams;
+    /** The index file mapped into memory, or null if there is none. */
+    private ByteBuffer _Index;
+    /** Number of records of the journal indexed. */
+    private int _Covered;
+    /** Bytes of the journal indexed. */
+    private long _CoveredBytes;
+    /** Number of keys in the index. */
+    private int _Keys;
+    /** Offsets in _Index of the key offsets, the postings offsets, the
+     *  keys and the postings. */
+    private int _KeyStarts, _PostingStarts, _KeysAt, _PostingsAt;
+}
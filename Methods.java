@@ -1,55 +1,472 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import static gitlet.Utils.join;
 
 /** Class that runs commands as methods and store the entire data.
  *  @author Jenna Jang
  */
-public class Methods implements Serializable {
+public class Methods {
 
     /** Working Directory. */
-    private File _CWD = new File(System.getProperty("user.dir"));
+    private File _CWD;
     /** New gitlet directory. */
-    private File newDir = new File(_CWD, ".gitlet");
+    private File newDir;
+    /** Store of the commit and blob objects. */
+    private ObjectStore _Objects;
+    /** Stat cache of the working directory. */
+    private Index _Index;
+    /** Settings of the repository. */
+    private Config _Config;
     /** Repo stage. */
     private Stage _Stage;
     /** Current working branch. */
     private Branch _Branchpoint;
     /** The program is fetched or not. */
     private boolean _Fetch = false;
-    /** Commits made so far. */
-    private ArrayList<Commit> _Commits;
-    /** Working branched. */
-    private ArrayList<Branch> _Branches;
+    /** Journal of the commits made or fetched, read on first use. */
+    private CommitJournal _Journal;
+    /** Ancestry of the commits, read on first use. */
+    private CommitGraph _Graph;
+    /** Index of the commit messages, read on first use. */
+    private MessageIndex _Messages;
+    /** Where the heads of the branches are kept. */
+    private RefStore _Refs;
+    /** Working branched, by name, read from the refs on first use. */
+    private HashMap<String, Branch> _Branches =
+        new HashMap<String, Branch>();
+    /** Branches removed by this command, whose refs are deleted on save. */
+    private ArrayList<Branch> _RemovedBranches = new ArrayList<Branch>();
+    /** Name of the current branch as last read or saved. */
+    private String _SavedHead;
+    /** Log of the changes to the stage, refs and HEAD. */
+    private WriteAheadLog _Wal;
+    /** Blob of each file staged for addition as last read or saved. */
+    private HashMap<String, String> _SavedAddition =
+        new HashMap<String, String>();
+    /** Blob of each file staged for removal as last read or saved. */
+    private HashMap<String, String> _SavedRemoval =
+        new HashMap<String, String>();
     /** Untracked files. */
     private ArrayList<String> _untracking;
     /** Modified files not committed. */
     private ArrayList<String> _modifying;
     /** All remotes system. */
     private HashMap<String, String> _Remotes;
+    /** The remotes as last read or saved, or null if never saved. */
+    private HashMap<String, String> _SavedRemotes;
 
-    /** Command constructor used to load and save data. */
-    public Methods() throws IOException {
+    /** Command constructor used to load and save data.
+     * Usages:
+     * java gitlet.Main init
+     * java gitlet.Main init --compression [none|deflate|lz]
+     * @param args */
+    public Methods(String... args) throws IOException {
+        String codec = null;
+        if (args.length == 3 && args[1].equals("--compression")) {
+            codec = args[2];
+            if (Codec.forName(codec) == null) {
+                throw Utils.error("No such compression codec.");
+            }
+        } else if (args.length > 1) {
+            throw Utils.error("Incorrect operands.");
+        }
+        _CWD = new File(System.getProperty("user.dir"));
+        newDir = new File(_CWD, ".gitlet");
         newDir.mkdir();
-        File reading = join(newDir, "data");
-        reading.createNewFile();
+        join(newDir, "refs").mkdir();
+        Config config = new Config(newDir);
+        _Config = config;
+        if (codec != null) {
+            config.set(Config.COMPRESSION, codec);
+            config.save();
+        }
+        _Objects = new ObjectStore(newDir, config);
+        _Objects.create();
+        _Refs = new RefStore(newDir);
+        _Refs.create();
+        _Index = new Index(_CWD, join(newDir, "index"));
+        _Wal = new WriteAheadLog(newDir, sync());
         _Stage = new Stage();
-        _Commits = new ArrayList<Commit>();
-        _Branches = new ArrayList<Branch>();
         _Remotes = new HashMap<String, String>();
-        Commit init = new Commit("initial commit", null, null);
-        _Commits.add(init);
+        Commit init = new Commit("initial commit", null);
+        _Objects.putCommit(init);
+        recordCommit(init);
         Branch master = new Branch("master", init);
         _Branchpoint = master;
-        _Branches.add(master);
+        _Branches.put(master.name(), master);
+    }
+
+    /** Reads the repository kept in the gitlet directory DIR.  Only the
+     *  small state files are read here; commits and blobs are read from
+     *  the object store when a command touches them.  The stage is the
+     *  checkpoint with the write-ahead log replayed over it, and the ref
+     *  moves of a command that died after logging them are made first.
+     * @param dir */
+    private Methods(File dir) {
+        newDir = dir;
+        _CWD = dir.getAbsoluteFile().getParentFile();
+        _Config = new Config(dir);
+        _Objects = new ObjectStore(dir, _Config);
+        _Index = new Index(_CWD, join(dir, "index"));
+        _Remotes = readRemotes(join(dir, "remotes"));
+        _SavedRemotes = new HashMap<String, String>(_Remotes);
+        _Refs = new RefStore(dir);
+        if (!_Refs.exists()) {
+            convertRefs();
+        }
+        _Wal = new WriteAheadLog(dir, sync());
+        _Stage = _Wal.recover(_Objects, _Refs);
+        _Objects.attach(_Stage.rtAddition());
+        _Objects.attach(_Stage.rtRemoval());
+        _SavedAddition = WriteAheadLog.hashes(_Stage.rtAddition());
+        _SavedRemoval = WriteAheadLog.hashes(_Stage.rtRemoval());
+        _SavedHead = Utils.readContentsAsString(join(dir, "HEAD"));
+        _Branchpoint = whereBranch(_SavedHead);
+        _Fetch = join(dir, "fetched").exists();
+    }
+
+    /** Returns the repository kept in the gitlet directory DIR,
+     *  or null if there is none.
+     * @param dir */
+    static Methods load(File dir) {
+        if (!join(dir, "HEAD").isFile()) {
+            return null;
+        }
+        return new Methods(dir);
+    }
+
+    /** Rewrites the refs of a repository that kept each branch as a
+     *  serialized Branch in refs/NAME as text refs. */
+    private void convertRefs() {
+        List<String> names = Utils.plainFilenamesIn(join(newDir, "refs"));
+        if (names != null) {
+            for (String name : names) {
+                File ref = join(newDir, "refs", name);
+                Branch old = Utils.readObject(ref, Branch.class);
+                Utils.writeContents(ref, old.headHash() + "\n");
+            }
+        }
+        _Refs.create();
+    }
+
+    /** Returns true iff saved state is forced to disk (core.fsync). */
+    private boolean sync() {
+        return _Config.get(Config.FSYNC, "true").equals("true");
+    }
+
+    /** Writes the state files of the repository.  New objects and the
+     *  journal of new commits are forced to disk first.  Then the changes
+     *  to the stage, to the refs of the branches made, moved or removed
+     *  and to the current branch are logged as one batch of the
+     *  write-ahead log and only then made, so a crash leaves them all as
+     *  they were before the command or, once the batch is logged, as
+     *  after it.  A ref that another command changed since it was read is
+     *  left alone, and the command fails, its batch undone by one that
+     *  always holds the current branch, so it is never empty and the
+     *  next load does not redo the failed ref moves. */
+    void save() throws IOException {
+        _Objects.sync();
+        if (_Journal != null) {
+            boolean added = !_Journal.pending().isEmpty();
+            _Journal.save();
+            if (added || _Messages != null) {
+                messages().save();
+            }
+        }
+        if (_Graph != null) {
+            _Graph.save();
+        }
+        HashMap<String, String> added =
+            WriteAheadLog.hashes(_Stage.rtAddition());
+        HashMap<String, String> removed =
+            WriteAheadLog.hashes(_Stage.rtRemoval());
+        WriteAheadLog.Batch batch = new WriteAheadLog.Batch();
+        batch.stage(_SavedAddition, _SavedRemoval, added, removed);
+        ArrayList<Branch> moved = new ArrayList<Branch>(_RemovedBranches);
+        for (Branch branch : _Branches.values()) {
+            if (!branch.headHash().equals(branch.savedHash())) {
+                moved.add(branch);
+            }
+        }
+        for (Branch branch : moved) {
+            String hash = _RemovedBranches.contains(branch) ? null
+                : branch.headHash();
+            if (!Objects.equals(_Refs.get(branch.name()),
+                                branch.savedHash())) {
+                refChanged(branch);
+            }
+            batch.ref(branch.name(), branch.savedHash(), hash);
+        }
+        boolean headMoved = !_Branchpoint.name().equals(_SavedHead);
+        if (headMoved) {
+            batch.head(_Branchpoint.name());
+        }
+        _Wal.append(batch);
+        for (Branch branch : moved) {
+            String hash = _RemovedBranches.contains(branch) ? null
+                : branch.headHash();
+            if (!_Refs.update(branch.name(), branch.savedHash(), hash)) {
+                WriteAheadLog.Batch undo = new WriteAheadLog.Batch();
+                undo.stage(added, removed, _SavedAddition, _SavedRemoval);
+                if (_SavedHead != null) {
+                    undo.head(_SavedHead);
+                }
+                _Wal.append(undo);
+                refChanged(branch);
+            }
+            branch.markSaved();
+        }
+        _RemovedBranches.clear();
+        if (headMoved) {
+            Utils.writeAtomically(join(newDir, "HEAD"),
+                    _Branchpoint.name().getBytes(StandardCharsets.UTF_8),
+                    sync());
+            _SavedHead = _Branchpoint.name();
+        }
+        _SavedAddition = added;
+        _SavedRemoval = removed;
+        if (_Wal.due()) {
+            _Wal.checkpoint(_Stage);
+        }
+        _Index.save();
+        if (!_Remotes.equals(_SavedRemotes)) {
+            Utils.writeAtomically(join(newDir, "remotes"),
+                    encodeRemotes(_Remotes), sync());
+            _SavedRemotes = new HashMap<String, String>(_Remotes);
+        }
+        if (_Fetch) {
+            join(newDir, "fetched").createNewFile();
+        }
+    }
+
+    /** Ends a command that is not followed by save, as in a batch, so
+     *  that the next one checks the working directory afresh. */
+    void endCommand() {
+        _Index.expire();
+    }
+
+    /** Fails the command because the ref of BRANCH is locked or is no
+     *  longer the one it was read as.
+     * @param branch */
+    private void refChanged(Branch branch) {
+        throw Utils.error("Branch %s is locked or was changed by another"
+                + " command.", branch.name());
+    }
+
+    /** Moves the refs of every branch into packed-refs.
+     * java gitlet.Main pack-refs */
+    void packRefs() {
+        int packed = _Refs.packRefs();
+        if (packed < 0) {
+            throw Utils.error("The refs are locked by another command.");
+        }
+        System.out.println("packed-refs: " + packed);
+    }
+
+    /** Rewrites in the binary encoding every loose commit object, and the
+     *  stage, still kept as a serialized Java object, reporting how many
+     *  commits were rewritten and their bytes before and after.  The
+     *  remotes are written encoded by save.  Packed commits are left as
+     *  they are; both formats are read either way.
+     * java gitlet.Main migrate */
+    void migrate() {
+        int commits = 0;
+        long before = 0, after = 0;
+        for (String hash : commitIds()) {
+            if (!_Objects.file(hash).isFile()) {
+                continue;
+            }
+            byte[] data = _Objects.get(hash);
+            if (Binary.serialized(data)) {
+                byte[] encoded = Commit.decode(data).encode();
+                _Objects.rewrite(hash, encoded);
+                commits += 1;
+                before += data.length;
+                after += encoded.length;
+            }
+        }
+        File stage = join(newDir, "stage");
+        boolean stageMigrated = stage.isFile()
+            && Binary.serialized(Utils.readContents(stage));
+        if (stageMigrated) {
+            _Wal.checkpoint(_Stage);
+        }
+        _SavedRemotes = null;
+        System.out.println("commits: " + commits);
+        System.out.println("commit-bytes: " + before + " -> " + after);
+        System.out.println("stage: " + (stageMigrated ? "migrated"
+                                        : "current"));
+    }
+
+    /** Returns the names of every branch, in order. */
+    private TreeSet<String> branchNames() {
+        TreeSet<String> names = _Refs.names();
+        names.addAll(_Branches.keySet());
+        for (Branch branch : _RemovedBranches) {
+            names.remove(branch.name());
+        }
+        return names;
+    }
+
+    /** Kind of encoding of the remotes (see Binary.java). */
+    private static final String REMOTES = "GLRM";
+
+    /** Returns the remotes saved in FILE, encoded or, if written before
+     *  the encoding, serialized.
+     * @param file */
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, String> readRemotes(File file) {
+        byte[] data = Utils.readContents(file);
+        if (Binary.serialized(data)) {
+            return Binary.deserialize(data, HashMap.class);
+        }
+        Binary.Reader in = new Binary.Reader(data, REMOTES, 1);
+        HashMap<String, String> result = new HashMap<String, String>();
+        for (long n = in.varint(); n > 0; n -= 1) {
+            result.put(in.string(), in.string());
+        }
+        return result;
+    }
+
+    /** Returns the encoding of REMOTES: their number, then the name and
+     *  directory of each.
+     * @param remotes */
+    private static byte[] encodeRemotes(Map<String, String> remotes) {
+        Binary.Writer out = new Binary.Writer(REMOTES, 1);
+        out.varint(remotes.size());
+        for (Map.Entry<String, String> e : remotes.entrySet()) {
+            out.string(e.getKey()).string(e.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the ids of every commit made so far. */
+    ArrayList<String> commitIds() {
+        return journal().ids();
+    }
+
+    /** Returns the commit journal.  A repository that kept only the ids
+     *  of its commits, in .gitlet/commits, has its journal written from
+     *  them here, once. */
+    CommitJournal journal() {
+        if (_Journal == null) {
+            _Journal = new CommitJournal(newDir, sync());
+            File ids = join(newDir, "commits");
+            if (_Journal.missing() && ids.exists()) {
+                for (String hash
+                        : Utils.readContentsAsString(ids).split("\n")) {
+                    if (!hash.isEmpty()) {
+                        _Journal.add(_Objects.getCommit(hash), 0);
+                    }
+                }
+                _Journal.save();
+                ids.delete();
+                join(newDir, "messages").delete();
+            }
+        }
+        return _Journal;
+    }
+
+    /** Returns the commit graph, building it from the journal if the
+     *  repository has none yet. */
+    CommitGraph graph() {
+        if (_Graph == null) {
+            _Graph = new CommitGraph(join(newDir, "commit-graph"));
+            if (_Graph.missing()) {
+                CommitJournal journal = journal();
+                HashMap<String, String> parents = new HashMap<String, String>();
+                for (long at = 0; at < journal.end(); at = journal.next(at)) {
+                    CommitJournal.Entry entry = journal.read(at);
+                    parents.put(entry.hash, entry.parent);
+                }
+                for (CommitJournal.Entry entry : journal.pending()) {
+                    parents.put(entry.hash, entry.parent);
+                }
+                for (String hash : parents.keySet()) {
+                    graphAdd(hash, parents);
+                }
+            }
+        }
+        return _Graph;
+    }
+
+    /** Adds the commit HASH and any of its ancestors missing from the
+     *  commit graph to it, parents first, finding parents in PARENTS. */
+    private void graphAdd(String hash, Map<String, String> parents) {
+        ArrayList<String> missing = new ArrayList<String>();
+        for (String arrow = hash; arrow != null
+                 && _Graph.position(arrow) == CommitGraph.NONE;
+             arrow = parents.get(arrow)) {
+            missing.add(arrow);
+        }
+        for (int i = missing.size() - 1; i >= 0; i -= 1) {
+            _Graph.add(missing.get(i), parents.get(missing.get(i)));
+        }
+    }
+
+    /** Adds COMMIT and any of its ancestors missing from the commit graph
+     *  to it, parents first.
+     * @param commit */
+    private void graphAdd(Commit commit) {
+        ArrayList<Commit> missing = new ArrayList<Commit>();
+        for (Commit arrow = commit;
+             arrow != null && _Graph.position(arrow.getHash())
+                 == CommitGraph.NONE;
+             arrow = arrow.getParent()) {
+            missing.add(arrow);
+        }
+        for (int i = missing.size() - 1; i >= 0; i -= 1) {
+            Commit c = missing.get(i);
+            _Graph.add(c.getHash(), c.getParentHash());
+        }
+    }
+
+    /** Returns the index of the messages in the journal. */
+    MessageIndex messages() {
+        if (_Messages == null) {
+            _Messages = new MessageIndex(newDir, journal(),
+                    _Config.get(Config.FIND_NGRAMS, "false").equals("true"));
+        }
+        return _Messages;
+    }
+
+    /** Records COMMIT, just put in the object store, as a new commit of
+     *  this repository.
+     * @param commit */
+    private void recordCommit(Commit commit) {
+        journal().add(commit, System.currentTimeMillis());
+        graph();
+        graphAdd(commit);
     }
 
     /** Adds a copy of the file as it currently exists to the staging area.
@@ -68,37 +485,115 @@ public class Methods implements Serializable {
      */
     void add(String fileName) {
         File add = new File(_CWD, fileName);
-        if (add.exists()) {
-            Blob changing = new Blob(add);
-            Commit crHead = _Branchpoint.head();
-            if (_Stage.rtAddition().containsKey(fileName)) {
-                _Stage.replace(fileName, changing);
+        if (!add.exists()) {
+            throw Utils.error("File does not exist.");
+        }
+        Blob changing = stageBlob(add);
+        Blob commCont = _Branchpoint.head().whereBlob(fileName);
+        _Stage.rmFromrm(fileName);
+        if (commCont != null && commCont.hash().equals(changing.hash())) {
+            _Stage.minusFromAdd(fileName);
+        } else {
+            _Stage.add(fileName, changing);
+        }
+    }
+
+    /** Stages every file named in ARGS, after the command name.  Each may
+     * be a file, a directory, whose files are all staged, or "." for the
+     * whole working directory; a path outside the working directory is
+     * refused.  The files are copied into the object store
+     * in parallel and then staged in order, all in this one command, so
+     * the stage and stat cache are written once.  With --stats, prints
+     * how long that took.
+     * Usages:
+     * java gitlet.Main add [file or directory]... [--stats]
+     * @param args
+     */
+    void add(String... args) {
+        long start = System.nanoTime();
+        boolean stats = false;
+        LinkedHashSet<String> names = new LinkedHashSet<String>();
+        Path cwd = _CWD.toPath().toAbsolutePath().normalize();
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--stats")) {
+                stats = true;
+                continue;
             }
-            if (crHead.getParent() != null) {
-                Blob commCont = crHead.whereBlob(fileName);
-                if (commCont != null) {
-                    String nHash = changing.hash();
-                    String currHash = commCont.hash();
-                    HashMap<String, Blob> removed = _Branchpoint.removed();
-                    if (removed.containsKey(fileName)
-                            && nHash.equals(currHash)) {
-                        _Branchpoint.rmFrrm(fileName);
-                        _Stage.rmFromrm(fileName);
-                    }
-                    if (!nHash.equals(currHash)) {
-                        _Stage.add(fileName, changing);
-                    } else if (_Stage.rtAddition().containsKey(fileName)) {
-                        remove(fileName);
-                    }
-                } else {
-                    _Stage.add(fileName, changing);
+            Path path = cwd.resolve(args[i]).normalize();
+            if (!path.startsWith(cwd)) {
+                throw Utils.error("File is outside the working directory.");
+            }
+            if (!Files.exists(path)) {
+                throw Utils.error("File does not exist.");
+            }
+            collect(cwd, path, names);
+        }
+        if (names.isEmpty()) {
+            throw Utils.error("Incorrect operands.");
+        }
+        ArrayList<File> files = new ArrayList<File>(names.size());
+        for (String name : names) {
+            files.add(new File(_CWD, name));
+        }
+        long[] bytes = new long[1];
+        Utils.forEach(files, threads(), file -> {
+            stageBlob(file);
+            synchronized (bytes) {
+                bytes[0] += file.length();
+            }
+        });
+        for (String name : names) {
+            add(name);
+        }
+        if (stats) {
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("added %d files (%d bytes) in %.3f s:"
+                    + " %.0f files/s, %.1f MB/s%n", names.size(), bytes[0],
+                    secs, names.size() / secs, bytes[0] / 1048576.0 / secs);
+        }
+    }
+
+    /** Helper function of the add.
+     * Adds to NAMES the path relative to CWD of FILE, or of every plain
+     * file under FILE if it is a directory, in lexicographic order.
+     * The .gitlet directory is skipped, as are paths already in NAMES.
+     * Symbolic links are not followed into directories, so a link cannot
+     * lead the walk out of the working directory or round a loop; a link
+     * to a plain file counts as that file.
+     * @param cwd
+     * @param file
+     * @param names
+     */
+    private void collect(Path cwd, Path file, Collection<String> names) {
+        if (file.equals(newDir.toPath().toAbsolutePath().normalize())) {
+            return;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            if (attrs.isSymbolicLink()) {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attrs.isDirectory()) {
+                    return;
                 }
-            } else {
-                _Stage.add(fileName, changing);
             }
-        } else {
-            System.out.println("File does not exist.");
-            System.exit(0);
+        } catch (IOException excp) {
+            return;
+        }
+        if (attrs.isDirectory()) {
+            List<String> children = new ArrayList<String>();
+            String[] list = file.toFile().list();
+            if (list != null) {
+                children.addAll(Arrays.asList(list));
+            }
+            Collections.sort(children);
+            for (String child : children) {
+                collect(cwd, file.resolve(child), names);
+            }
+        } else if (attrs.isRegularFile()) {
+            names.add(cwd.relativize(file).toString()
+                    .replace(File.separatorChar, '/'));
         }
     }
 
@@ -111,31 +606,39 @@ public class Methods implements Serializable {
      * @param msg
      * */
     void commit(String msg) {
+        commit(msg, false);
+    }
+
+    /** Commits the stage with the message MSG.  Unless MERGE, there must
+     * be something staged.  The new commit starts from the snapshot of its
+     * parent, so only the staged paths are added to it.
+     * @param msg
+     * @param merge */
+    private void commit(String msg, boolean merge) {
         if (msg.equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
-        }
-        if (msg.length() > 4) {
-            int i = msg.indexOf(' ');
-            String substring = msg.substring(0, i);
-            if (!substring.equals("Merged")
-                    && !substring.equals("Encountered")) {
-                if (_Stage.rtAddition().isEmpty()
-                        && _Stage.rtRemoval().isEmpty()) {
-                    System.out.println("No changes added to the commit.");
-                    System.exit(0);
-                }
-            }
+            throw Utils.error("Please enter a commit message.");
+        }
+        if (!merge && _Stage.rtAddition().isEmpty()
+                && _Stage.rtRemoval().isEmpty()) {
+            throw Utils.error("No changes added to the commit.");
         }
         Commit crHead = _Branchpoint.head();
         Commit commit = new Commit(crHead);
         commit.setMessage(msg);
         commit.setTimestamp();
-        commit.setBlobs(_Stage.rtAddition());
+        HashMap<String, String> changes = new HashMap<String, String>();
+        for (Map.Entry<String, Blob> i : _Stage.rtAddition().entrySet()) {
+            changes.put(i.getKey(), i.getValue().hash());
+        }
+        for (String fileName : _Stage.rtRemoval().keySet()) {
+            changes.put(fileName, null);
+        }
+        commit.change(changes);
         commit.setParent(crHead);
-        commit.setHash(commit.getMessage() + commit.getTimestamp());
+        commit.seal(_Objects);
+        _Objects.putCommit(commit);
+        recordCommit(commit);
         _Branchpoint.gvCommtoHead(commit);
-        _Commits.add(commit);
         _Stage = new Stage();
 
     }
@@ -148,23 +651,14 @@ public class Methods implements Serializable {
      * @param fileName
      * */
     void remove(String fileName) {
-        Commit crHead = _Branchpoint.head();
-        if (crHead.getBlobs() == null
-                && !_Stage.rtAddition().containsKey(fileName)) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+        Blob crBlob = _Branchpoint.head().whereBlob(fileName);
+        if (crBlob == null && !_Stage.rtAddition().containsKey(fileName)) {
+            throw Utils.error("No reason to remove the file.");
         }
-        if (_Stage.rtAddition().containsKey(fileName)) {
-            _Stage.minusFromAdd(fileName);
-        } else if (crHead.getBlobs().containsKey(fileName)
-                || crHead.getParent().getBlobs().containsKey(fileName)) {
-            Blob crBlob = crHead.whereBlob(fileName);
+        _Stage.minusFromAdd(fileName);
+        if (crBlob != null) {
             _Stage.remove(fileName, crBlob);
-            _Branchpoint.plusRemoved(fileName, crBlob);
-            Utils.restrictedDelete(fileName);
-        } else {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            deleteFile(fileName);
         }
     }
 
@@ -172,11 +666,35 @@ public class Methods implements Serializable {
      * display information about each commit
      * backwards along the commit tree until the initial commit,
      * following the first parent commit links,
-     * ignoring any second parents found in merge commits. */
-    void log() {
+     * ignoring any second parents found in merge commits.
+     * Usages:
+     * java gitlet.Main log
+     * java gitlet.Main log -n [count]
+     * @param args */
+    void log(String... args) {
+        int limit = Integer.MAX_VALUE;
+        String grep = null;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw Utils.error("Incorrect operands.");
+            } else if (args[i].equals("-n")) {
+                try {
+                    limit = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException excp) {
+                    throw Utils.error("Incorrect operands.");
+                }
+            } else if (args[i].equals("--grep")) {
+                grep = args[i + 1];
+            } else {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
         Commit arrow = _Branchpoint.head();
-        while (arrow != null) {
-            printLog(arrow);
+        for (int i = 0; arrow != null && i < limit;) {
+            if (grep == null || arrow.getMessage().contains(grep)) {
+                printLog(arrow);
+                i += 1;
+            }
             arrow = arrow.getParent();
         }
     }
@@ -192,27 +710,86 @@ public class Methods implements Serializable {
         System.out.println();
     }
 
-    /** Like log, except displays information about all commits ever made.
-     * The order of the commits does not matter.
-     * Hint: there is a useful method in gitlet.
-     * Utils that will help you iterate over files within a directory. */
-    void globalLog() {
-        for (Commit i : _Commits) {
-            printLog(i);
+    /** Like log, except displays information about all commits ever made,
+     * in the order they were made or fetched, streamed from the journal
+     * without reading any commit objects.  -n N shows only the last N;
+     * --since DATE (yyyy-MM-dd, optionally followed by HH:mm or HH:mm:ss)
+     * only those recorded from DATE on.  Either is found by stepping back
+     * from the end of the journal.
+     * Usages:
+     * java gitlet.Main global-log [-n N] [--since DATE]
+     * @param args */
+    void globalLog(String... args) throws IOException {
+        CommitJournal journal = journal();
+        List<CommitJournal.Entry> pending = journal.pending();
+        long from = 0;
+        int skipPending = 0;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw Utils.error("Incorrect operands.");
+            } else if (args[i].equals("-n")) {
+                int n = Integer.MAX_VALUE;
+                try {
+                    n = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException excp) {
+                    throw Utils.error("Incorrect operands.");
+                }
+                if (n < 0) {
+                    throw Utils.error("Incorrect operands.");
+                }
+                skipPending = Math.max(skipPending, pending.size() - n);
+                from = Math.max(from,
+                        journal.last(Math.max(0, n - pending.size())));
+            } else if (args[i].equals("--since")) {
+                long time = parseDate(args[i + 1]);
+                from = Math.max(from, journal.since(time));
+            } else {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        BufferedWriter out = new BufferedWriter(
+                new OutputStreamWriter(System.out), Utils.CHUNK_SIZE);
+        for (long at = from, end = journal.end(); at < end;
+             at = journal.next(at)) {
+            printLog(journal.read(at), out);
         }
+        for (CommitJournal.Entry entry
+                : pending.subList(skipPending, pending.size())) {
+            printLog(entry, out);
+        }
+        out.flush();
     }
 
-    /** Helper function of the find.
-     * Return boolean value whether the given message does exist.
-     * @param msgtoCommit
-     * */
-    boolean findMsg(String msgtoCommit) {
-        for (Commit i : _Commits) {
-            if (i.getMessage().equals(msgtoCommit)) {
-                return true;
+    /** Helper function of the global-log.
+     * @param entry
+     * @param out
+     */
+    private void printLog(CommitJournal.Entry entry, Writer out)
+        throws IOException {
+        out.write("===\ncommit ");
+        out.write(entry.hash);
+        out.write("\nDate: ");
+        out.write(entry.date);
+        out.write('\n');
+        out.write(entry.message);
+        out.write("\n\n");
+    }
+
+    /** Returns the time DATE, in local time, in milliseconds; fails if it
+     *  is not in one of the forms global-log accepts.
+     * @param date */
+    private static long parseDate(String date) {
+        for (String form : new String[] {
+                "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm", "yyyy-MM-dd"}) {
+            SimpleDateFormat format = new SimpleDateFormat(form);
+            format.setLenient(false);
+            ParsePosition pos = new ParsePosition(0);
+            Date parsed = format.parse(date, pos);
+            if (parsed != null && pos.getIndex() == date.length()) {
+                return parsed.getTime();
             }
         }
-        return false;
+        throw Utils.error("Incorrect operands.");
     }
 
     /** Prints out the ids of all commits that have
@@ -221,19 +798,32 @@ public class Methods implements Serializable {
      * it prints the ids out on separate lines.
      * The commit message is a single operand; to indicate a multiword message,
      * put the operand in quotation marks, as for the commit command above.
-     * @param msgtoCommit
-     * */
-    void find(String msgtoCommit) {
-        if (findMsg(msgtoCommit)) {
-            for (Commit i : _Commits) {
-                if (i.getMessage().equals(msgtoCommit)) {
-                    System.out.println(i.getHash());
-                }
-            }
+     * The messages are looked up in the message index, not the commits.
+     * Usages:
+     * java gitlet.Main find [commit message]
+     * java gitlet.Main find --word [words]     (every word, any case)
+     * java gitlet.Main find --substring [text]
+     * @param args
+     */
+    void find(String... args) {
+        List<String> found = null;
+        if (args.length == 2) {
+            found = messages().exact(args[1]);
+        } else if (args.length == 3 && args[1].equals("--word")) {
+            found = messages().words(args[2]);
+        } else if (args.length == 3 && args[1].equals("--substring")) {
+            found = messages().substring(args[2]);
         } else {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
+        }
+        if (found.isEmpty()) {
+            throw Utils.error("Found no commit with that message.");
         }
+        StringBuilder out = new StringBuilder();
+        for (String hash : found) {
+            out.append(hash).append('\n');
+        }
+        System.out.print(out);
     }
 
     /** Displays what branches currently exist,
@@ -242,22 +832,24 @@ public class Methods implements Serializable {
      * An example of the exact format it should follow is as follows. */
     void status() {
         System.out.println("=== Branches ===");
-        for (Branch i : _Branches) {
-            if (i.name().equals(_Branchpoint.name())) {
+        for (String name : branchNames()) {
+            if (name.equals(_Branchpoint.name())) {
                 System.out.println("*" + _Branchpoint.name());
             } else {
-                System.out.println(i.name());
+                System.out.println(name);
             }
         }
         System.out.println("\n=== Staged Files ===");
         if (_Stage.rtAddition() != null) {
-            for (String fileName : _Stage.rtAddition().keySet()) {
+            for (String fileName
+                     : new TreeSet<String>(_Stage.rtAddition().keySet())) {
                 System.out.println(fileName);
             }
         }
         System.out.println("\n=== Removed Files ===");
         if (_Stage.rtRemoval() != null) {
-            for (String fileName : _Stage.rtRemoval().keySet()) {
+            for (String fileName
+                     : new TreeSet<String>(_Stage.rtRemoval().keySet())) {
                 System.out.println(fileName);
             }
         }
@@ -276,97 +868,45 @@ public class Methods implements Serializable {
         System.out.println();
     }
 
-    /** Helper function for status. */
+    /** Helper function for status.
+     * Fills _modifying with the files whose working copy differs from what
+     * is staged, or from the current commit if they are not staged, and
+     * _untracking with the files neither staged nor tracked, in order. */
     void statushelper1() {
-        Commit crHead = _Branchpoint.head();
-        HashMap<String, Blob> traFiles = crHead.getBlobs();
-        Commit prvHead = crHead.getParent();
-        List<String> evFiles = Utils.plainFilenamesIn(_CWD);
-        if (evFiles != null) {
-            for (String s : evFiles) {
-                ststushelpr2(s, traFiles, crHead, prvHead);
-            }
-        }
-        deleted(traFiles);
-    }
-
-    /** Helper function for setup using
-     * name, trackingfiles, current head, previous Head.
-     * @param name
-     * @param trFiles
-     * @param crHead
-     * @param prHead
-     * */
-    void ststushelpr2(String name, HashMap<String, Blob> trFiles,
-                     Commit crHead, Commit prHead) {
-        File file = new File(_CWD, name);
-        boolean tracking = false, addStaging = false;
-        boolean del = !file.exists();
-        boolean removeStaging = false;
-        Blob contStage = null;
-
-        if (trFiles != null) {
-            tracking = trFiles.containsKey(name);
-        }
-        if (!_Stage.rtAddition().isEmpty()) {
-            addStaging = _Stage.rtAddition().containsKey(name);
-            contStage = _Stage.rtAddition().get(name);
-        }
-        if (!_Stage.rtRemoval().isEmpty()) {
-            removeStaging = _Stage.rtRemoval().containsKey(name);
-        }
-        boolean sameORdiff = matchFlBl(file, contStage);
-        boolean situat1 = addStaging && sameORdiff;
-        boolean situat2 = addStaging && del;
-        boolean situat3 = !removeStaging && tracking && del;
-        if (prHead == null) {
-            if (situat1) {
-                _modifying.add(name + " (modified)");
-            }
-            if (!tracking && !addStaging) {
-                _untracking.add(name);
-            }
-        } else if (prHead.getParent() == null) {
-            boolean situa4 = tracking && sameORdiff && !addStaging;
-            boolean situa5 = tracking
-                    && matchFlBl(file, crHead.whereBlob(name));
-            if (situa4 || situat1 || situa5) {
-                _modifying.add(name + " (modified)");
-            }
-            if (!tracking && !addStaging) {
-                _untracking.add(name);
-            }
-        } else {
-            Blob prvBlob = prHead.whereBlob(name);
-            boolean prChg = matchFlBl(file, prvBlob);
-            boolean situa6 = tracking && prChg && !addStaging;
-            if (situa6 || situat1) {
-                _modifying.add(name + " (modified)");
-            }
-            boolean merging = Utils.readContentsAsString
-                    (file).contains("<<<<<<< HEAD");
-            if (!tracking && prChg && !merging) {
+        Snapshot tracking = _Branchpoint.head().snapshot();
+        HashMap<String, Blob> added = _Stage.rtAddition();
+        HashMap<String, Blob> removed = _Stage.rtRemoval();
+        TreeSet<String> modifying = new TreeSet<String>();
+        List<String> evFiles = workingFiles();
+        prehash(evFiles);
+        for (String name : evFiles) {
+            File file = new File(_CWD, name);
+            String tracked = tracking.get(name);
+            if (added.containsKey(name)) {
+                if (matchFlBl(file, added.get(name))) {
+                    modifying.add(name + " (modified)");
+                }
+            } else if (tracked != null && !removed.containsKey(name)) {
+                if (matchFlBl(file, new Blob(tracked, _Objects))) {
+                    modifying.add(name + " (modified)");
+                }
+            } else {
                 _untracking.add(name);
             }
         }
-        if (situat2 || situat3) {
-            _modifying.add(name + " (deleted)");
-        }
-    }
-
-    /** Helper function for the status.
-     * deleting file to the tracking files.
-     * @param trfiles
-     */
-    void deleted(HashMap<String, Blob> trfiles) {
-        if (trfiles != null) {
-            for (String s : trfiles.keySet()) {
-                File file = new File(_CWD, s);
-                if (!file.exists() && !_Stage.rtRemoval().containsKey(s)) {
-                    _modifying.add(s + " (deleted)");
-                }
+        HashSet<String> present = new HashSet<String>(evFiles);
+        for (String name : added.keySet()) {
+            if (!present.contains(name)) {
+                modifying.add(name + " (deleted)");
             }
         }
+        tracking.forEach((name, blob) -> {
+            if (!removed.containsKey(name) && !added.containsKey(name)
+                    && !present.contains(name)) {
+                modifying.add(name + " (deleted)");
+            }
+        });
+        _modifying.addAll(modifying);
     }
 
     /** Helper function for the status.
@@ -376,16 +916,87 @@ public class Methods implements Serializable {
      * @return !orgnHash.equals(hash)
      */
     boolean matchFlBl(File file, Blob blob) {
-        Blob orgn = new Blob(file);
-
         if (blob == null) {
             return false;
         }
-        String orgnHash = orgn.hash();
+        String orgnHash = _Index.hash(file);
         String hash = blob.hash();
         return !orgnHash.equals(hash);
     }
 
+    /** Returns the paths of every file under the working directory, in
+     * subdirectories too, but not in .gitlet, in order. */
+    List<String> workingFiles() {
+        ArrayList<String> names = new ArrayList<String>();
+        Path cwd = _CWD.toPath().toAbsolutePath().normalize();
+        collect(cwd, cwd, names);
+        return names;
+    }
+
+    /** Deletes the file NAME of the working directory if it exists, then
+     * any directories above it that this leaves empty.
+     * @param name */
+    void deleteFile(String name) {
+        File file = new File(_CWD, name);
+        if (!file.isFile()) {
+            return;
+        }
+        file.delete();
+        _Index.forget(file);
+        File dir = file.getParentFile();
+        while (!dir.getAbsoluteFile().equals(_CWD.getAbsoluteFile())
+                && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Hashes the files NAMES of the working directory on up to
+     * core.threads threads (default: one per processor), so that the
+     * helpers that then visit them in order find the hashes in the stat
+     * cache.
+     * @param names
+     */
+    void prehash(List<String> names) {
+        ArrayList<File> files = new ArrayList<File>(names.size());
+        for (String name : names) {
+            files.add(new File(_CWD, name));
+        }
+        _Index.hashAll(files, threads());
+    }
+
+    /** Returns the number of threads used to hash files. */
+    int threads() {
+        return _Config.getInt(Config.THREADS,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Helper function for the add.
+     * Returns the blob of FILE, copying FILE into the object store unless
+     * the stat cache shows it unchanged since a copy was stored.
+     * @param file
+     * @return blob
+     */
+    Blob stageBlob(File file) {
+        String hash = _Index.cached(file);
+        if (hash != null && _Objects.contains(hash)) {
+            return new Blob(hash, _Objects);
+        }
+        Blob blob = new Blob(file, _Objects);
+        _Index.record(file, blob.hash());
+        return blob;
+    }
+
+    /** Writes the content of BLOB to FILE and records the result in the
+     * stat cache.
+     * @param blob
+     * @param file
+     */
+    void checkoutBlob(Blob blob, File file) {
+        file.getParentFile().mkdirs();
+        blob.writeTo(file);
+        _Index.record(file, blob.hash());
+    }
+
     /** Checkouts based on ARGS
      * Usages:
      * java gitlet.Main checkout -- [file name]
@@ -396,21 +1007,18 @@ public class Methods implements Serializable {
             if (args[1].equals("--")) {
                 coFile(args[2]);
             } else {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw Utils.error("Incorrect operands.");
             }
         } else if (args.length == 4) {
             if (args[2].equals("--")) {
                 coID(args[1], args[3]);
             } else {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw Utils.error("Incorrect operands.");
             }
         } else if (args.length == 2) {
             coBranch(args[1]);
         } else {
-            System.out.println("Invalid input format");
-            System.exit(0);
+            throw Utils.error("Invalid input format");
         }
     }
 
@@ -418,19 +1026,8 @@ public class Methods implements Serializable {
      * java gitlet.Main checkout -- [file name]
      * @param fileName
      * */
-    void coFile(String fileName) {
-        File file = new File(_CWD, fileName);
-        Commit crrCommit = _Branchpoint.head();
-        HashMap<String, Blob> tracking = crrCommit.getBlobs();
-        if (tracking.containsKey(fileName)) {
-            Blob blob = crrCommit.whereBlob(fileName);
-            if (blob != null) {
-                Utils.writeContents(file, blob.content());
-            }
-        } else {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
-        }
+    void coFile(String fileName) throws IOException {
+        coID(_Branchpoint.head(), fileName);
     }
 
     /** Checkout the commit ID and file name.
@@ -441,22 +1038,21 @@ public class Methods implements Serializable {
     void coID(String hash, String fName) throws IOException {
         Commit commit = whereHash(hash);
         if (commit == null) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        HashMap<String, Blob> tracking = commit.getBlobs();
-        if (!tracking.containsKey(fName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw Utils.error("No commit with that id exists.");
         }
-        File file = new File(_CWD, fName);
+        coID(commit, fName);
+    }
+
+    /** Checks out the file FNAME as it is in COMMIT.
+     * @param commit
+     * @param fName
+     * */
+    void coID(Commit commit, String fName) throws IOException {
         Blob blob = commit.whereBlob(fName);
-        if (blob != null) {
-            if (!file.exists()) {
-                file.createNewFile();
-            }
-            Utils.writeContents(file, blob.content());
+        if (blob == null) {
+            throw Utils.error("File does not exist in that commit.");
         }
+        checkoutBlob(blob, new File(_CWD, fName));
     }
 
     /** Checkout the Branch.
@@ -466,126 +1062,135 @@ public class Methods implements Serializable {
     void coBranch(String brName) throws IOException {
         Branch branch = whereBranch(brName);
         if (branch == null) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+            throw Utils.error("No such branch exists.");
         } else if (brName.equals(_Branchpoint.name())) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
-        }
-        Commit coCommit = branch.head();
-        HashMap<String, Blob> coTracking = coCommit.getBlobs();
-        Commit crrCommit = _Branchpoint.head();
-        HashMap<String, Blob> crrTracking = crrCommit.getBlobs();
-        if (coTracking != null) {
-            for (Map.Entry<String, Blob> i : coTracking.entrySet()) {
-                String fileName = i.getKey();
-                File file = new File(_CWD, fileName);
-                Blob blob = i.getValue();
-                boolean rm = _Branchpoint.removed().containsKey(fileName);
-                if (!rm || coCommit.getMessage().equals("msg1")) {
-                    if (file.exists()) {
-                        noTracwriteReplacing(crrTracking, fileName, blob);
-                    } else {
-                        file.createNewFile();
-                    }
-                    Utils.writeContents(file, blob.content());
-                }
-            }
+            throw Utils.error("No need to checkout the current branch.");
         }
-        if (crrTracking != null) {
-            for (Map.Entry<String, Blob> i : crrTracking.entrySet()) {
-                String fileName = i.getKey();
-                File file = new File(_CWD, fileName);
-                boolean noTracking = true;
-                if (coTracking != null) {
-                    noTracking = !coTracking.containsKey(fileName);
-                }
-                if (noTracking) {
-                    Utils.restrictedDelete(file);
+        checkoutCommit(branch.head());
+        _Branchpoint = branch;
+    }
+
+    /** Makes the working directory hold the files of TARGET in place of
+     * those of the current commit, and clears the stage.
+     * @param target */
+    void checkoutCommit(Commit target) {
+        applyCheckout(planCheckout(target));
+    }
+
+    /** Returns the plan that makes the working directory hold the files
+     * of TARGET in place of those of the current commit.  Only the paths
+     * whose blobs differ between the two commits are in it, found by
+     * diffing their trees, and of those not the ones the stat cache shows
+     * already hold their new blobs.  Files are read only to check those
+     * the current commit does not track, on core.threads threads; it
+     * fails, having changed nothing, if one would be overwritten.
+     * @param target
+     * @return
+     */
+    CheckoutPlan planCheckout(Commit target) {
+        CheckoutPlan plan = new CheckoutPlan();
+        ArrayList<String> added = new ArrayList<String>(),
+            present = new ArrayList<String>();
+        _Branchpoint.head().diff(target, (path, before, after) -> {
+            if (after == null) {
+                plan.delete(path);
+                return;
+            }
+            plan.write(path, after);
+            if (new File(_CWD, path).isFile()) {
+                present.add(path);
+                if (before == null) {
+                    added.add(path);
                 }
             }
+        });
+        prehash(added);
+        for (String path : added) {
+            if (matchFlBl(new File(_CWD, path),
+                    new Blob(plan.writes().get(path), _Objects))) {
+                untrackedInTheWay();
+            }
         }
-        if (!_Branchpoint.removed().isEmpty()) {
-            for (String i : _Branchpoint.removed().keySet()) {
-                HashMap<String, Blob> eve = branch.head().
-                        getParent().getBlobs();
-                if (eve != null) {
-                    if (eve.containsKey(i)) {
-                        File file = new File(_CWD, i);
-                        file.createNewFile();
-                        Blob blob = branch.head().getParent().whereBlob(i);
-                        Utils.writeContents(file, blob.content());
-                    }
-                }
+        for (String path : present) {
+            if (plan.writes().get(path).equals(
+                    _Index.cached(new File(_CWD, path)))) {
+                plan.skip(path);
             }
         }
-        _Branchpoint = branch;
+        return plan;
+    }
+
+    /** Carries out PLAN, deleting its files first so a file can take the
+     * place of a directory, then writing the rest on core.threads
+     * threads, and clears the stage.
+     * @param plan */
+    void applyCheckout(CheckoutPlan plan) {
+        for (String path : plan.deletions()) {
+            deleteFile(path);
+        }
+        Utils.forEach(new ArrayList<Map.Entry<String, String>>(
+                plan.writes().entrySet()), threads(),
+            i -> checkoutBlob(new Blob(i.getValue(), _Objects),
+                    new File(_CWD, i.getKey())));
         _Stage = new Stage();
     }
 
-    /**
-     *
-     * @param crTracking
-     * @param fileName
-     * @param blob
-     */
-    void noTracwriteReplacing(HashMap<String, Blob> crTracking,
-                              String fileName, Blob blob) {
-        File file = new File(_CWD, fileName);
-        boolean noTracking = false;
-        if (!_Branchpoint.head().getMessage().equals("msg3")) {
-            if (crTracking != null) {
-                noTracking = !crTracking.containsKey(fileName);
-            } else {
-                noTracking = Utils.plainFilenamesIn(_CWD) != null;
-            }
-            boolean overwrite = matchFlBl(file, blob);
-            if (noTracking && overwrite) {
-                System.out.println("There is an untracked file"
-                        + " in the way delete it,"
-                        + " or add and commit it first.");
-                System.exit(0);
-            }
-        }
+    /** Fails the command because an untracked file would be
+     *  overwritten. */
+    void untrackedInTheWay() {
+        throw Utils.error("There is an untracked file in the way;"
+                + " delete it, or add and commit it first.");
     }
 
-    /**
+    /** Returns the commit whose id starts with HASH, which may be
+     * abbreviated to any length, or null if there is none.  Looked up in
+     * the sorted ids of the commit graph.
      * @param hash
      * @return
      */
     Commit whereHash(String hash) {
-        for (Commit i : _Commits) {
-            if (hash.substring(0, 6).equals(i.getHash().substring(0, 6))) {
-                return i;
-            }
+        List<String> found = graph().find(hash, 2);
+        if (found.size() > 1) {
+            throw Utils.error("Ambiguous commit id.");
         }
-        return null;
+        return found.isEmpty() ? null : _Objects.getCommit(found.get(0));
     }
 
-    /**
+    /** Returns the branch BRANCHNAME, read from its ref on first use, or
+     * null if there is none.
      * @param branchName
      * @return
      */
-
     Branch whereBranch(String branchName) {
-        for (Branch i : _Branches) {
-            if (i.name().equals(branchName)) {
-                return i;
+        Branch branch = _Branches.get(branchName);
+        if (branch == null) {
+            for (Branch removed : _RemovedBranches) {
+                if (removed.name().equals(branchName)) {
+                    return null;
+                }
             }
+            String hash = _Refs.get(branchName);
+            if (hash == null) {
+                return null;
+            }
+            branch = new Branch(branchName, hash, _Objects);
+            _Branches.put(branchName, branch);
         }
-        return null;
+        return branch;
     }
 
     /**
      * @param brName
      */
     void branch(String brName) {
+        if (!RefStore.valid(brName)) {
+            throw Utils.error("Invalid branch name.");
+        }
         if (whereBranch(brName) == null) {
             Branch nBranch = new Branch(brName, _Branchpoint.head());
-            _Branches.add(nBranch);
+            _Branches.put(brName, nBranch);
         } else {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+            throw Utils.error("A branch with that name already exists.");
         }
     }
 
@@ -595,14 +1200,13 @@ public class Methods implements Serializable {
     void removeBranch(String branch) {
         Branch rm = whereBranch(branch);
         if (rm == null) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name does not exist.");
         }
         if (_Branchpoint.name().equals(branch)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw Utils.error("Cannot remove the current branch.");
         }
-        _Branches.remove(rm);
+        _Branches.remove(branch);
+        _RemovedBranches.add(rm);
     }
 
     /**
@@ -610,225 +1214,152 @@ public class Methods implements Serializable {
      * @throws IOException
      */
     void reset(String hash) throws IOException {
+        reset(hash, false);
+    }
+
+    /** Checks out the commit HASH and moves the current branch to it, in
+     * three phases: resolving the commit, planning the changes to the
+     * working directory, and applying them.  If STATS, prints the work
+     * done and the time each phase took.
+     * @param hash
+     * @param stats
+     * @throws IOException
+     */
+    void reset(String hash, boolean stats) throws IOException {
+        long start = System.nanoTime();
         Commit commit = whereHash(hash);
         if (_Fetch) {
-            System.exit(0);
+            throw new GitletException();
         }
         if (commit == null) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        boolean wrReplacing = false;
-        boolean noTracking = false;
-        List<String> evFiles = Utils.plainFilenamesIn(_CWD);
-        HashMap<String, Blob> tracking = commit.getBlobs();
-        if (evFiles != null) {
-            for (String s : evFiles) {
-                File file = new File(_CWD, s);
-                if (tracking != null) {
-                    noTracking = tracking.containsKey(s);
-                }
-                if (file.exists()) {
-                    wrReplacing = matchFlBl(file, commit.whereBlob(s));
-                }
-            }
-        }
-        if (wrReplacing && noTracking) {
-            System.out.println("There is an untracked file in the way;"
-                    + " delete it, or add and commit it first.");
-            System.exit(0);
-        }
-        for (String name : tracking.keySet()) {
-            coID(hash, name);
-        }
-        HashMap<String, Blob> hdTracking = _Branchpoint.head().getBlobs();
-        for (String s : hdTracking.keySet()) {
-            if (!tracking.containsKey(s)) {
-                Utils.restrictedDelete(s);
-            }
+            throw Utils.error("No commit with that id exists.");
         }
+        long resolved = System.nanoTime();
+        CheckoutPlan plan = planCheckout(commit);
+        long planned = System.nanoTime();
+        applyCheckout(plan);
         _Branchpoint.gvCommtoHead(commit);
-        _Stage = new Stage();
+        if (stats) {
+            plan.time(0, resolved - start);
+            plan.time(1, planned - resolved);
+            plan.time(2, System.nanoTime() - planned);
+            System.out.print(plan.report(threads()));
+        }
     }
 
 
-    /**
+    /** Merges the files of the branch BRNAME into the current branch.
+     * Each file takes the version of the side that changed it since
+     * their split point; a file both sides changed differently is merged
+     * line by line, with conflict markers only around the lines both
+     * changed differently.
      * @param brName
      * @throws IOException
      */
     void merge(String brName) throws IOException {
         Branch branch = whereBranch(brName);
-        errorMerge(branch);
-        Commit spPoint = splitWhere(_Branchpoint, branch);
-        Commit crHead = _Branchpoint.head();
-        Commit gvnHead = branch.head();
+        Commit spPoint = errorMerge(branch);
+        Snapshot split = spPoint.snapshot();
+        Snapshot curr = _Branchpoint.head().snapshot();
+        Snapshot given = branch.head().snapshot();
+        given.forEach((name, hash) -> {
+            File file = new File(_CWD, name);
+            if (!curr.contains(name) && file.exists()
+                    && matchFlBl(file, new Blob(hash, _Objects))) {
+                untrackedInTheWay();
+            }
+        });
+        TreeSet<String> names = split.paths();
+        names.addAll(curr.paths());
+        names.addAll(given.paths());
         boolean conflict = false;
-        HashMap<String, Blob> crrTra = crHead.getBlobs();
-        HashMap<String, Blob> gvnTrac = gvnHead.getBlobs();
-        if (gvnTrac != null) {
-            for (String s : gvnTrac.keySet()) {
-                File file = new File(_CWD, s);
-                Blob crBlob = crHead.whereBlob(s);
-                Blob gvnBlob = gvnHead.whereBlob(s);
-                if (file.exists()) {
-                    noTracwriteReplacing(crrTra, s, gvnBlob);
-                }
-                boolean modifiGivn = modiFilename(s, spPoint, gvnHead);
-                boolean modifiCurr = modiFilename(s, spPoint, crHead);
-                boolean splitWhere = spPoint.whereBlob(s) != null;
-                boolean aCurr = crBlob != null;
-                boolean aGvn = gvnBlob != null;
-                if (!aCurr) {
-                    if (!splitWhere && aGvn) {
-                        file.createNewFile();
-                        Utils.writeContents(file, gvnBlob.content());
-                        add(s);
-                    }
-                    if (crHead.getMessage().equals("msg3")) {
-                        Utils.writeContents(file, gvnBlob.content());
-                        add(s);
-                    }
-                } else if (!aGvn) {
-                    if (splitWhere && !modifiCurr) {
-                        remove(s);
-                    }
-                } else {
-                    boolean contentSD = crBlob.contentSameDif(gvnBlob);
-                    boolean removGiv = branch.removed().containsKey(s);
-                    boolean removCurr = _Branchpoint.removed().
-                            containsKey(s);
-                    boolean conflict1 = modifiGivn && !aCurr;
-                    boolean conflict2 = modifiCurr && modifiGivn && !contentSD;
-                    boolean conflict3 = !splitWhere && !contentSD;
-                    conflict = conflict1 || conflict2 || conflict3;
-                    if (conflict) {
-                        crBlobGvnBlob(crBlob, gvnBlob, file);
-                    } else if (modifiGivn && !modifiCurr) {
-                        Utils.writeContents(file, gvnBlob);
-                        add(file.getName());
-                    }
-                }
+        for (String s : names) {
+            String spHash = split.get(s), crHash = curr.get(s),
+                gvnHash = given.get(s);
+            if (Objects.equals(crHash, gvnHash)
+                    || Objects.equals(spHash, gvnHash)) {
+                continue;
+            }
+            File file = new File(_CWD, s);
+            if (!Objects.equals(spHash, crHash)) {
+                conflict |= mergeFile(spHash, crHash, gvnHash, file);
+                add(s);
+            } else if (gvnHash == null) {
+                remove(s);
+            } else {
+                checkoutBlob(blobOf(gvnHash), file);
+                add(s);
             }
         }
-        checkRemoveGiven(branch);
-        boolean edges = cases(crrTra, branch);
-        boolean lsConf = lastConflict(branch, spPoint);
-        conflict = conflict || lsConf || edges;
         whattoPrint(conflict, brName);
     }
 
-    /**
+    /** Writes to FILE the merge of the blobs CRHASH and GVNHASH, both
+     * changed from the blob SPHASH of their split point, and returns true
+     * iff it has conflicts.  A null hash is a file that does not exist;
+     * if either side removed the file, the whole of each side is one
+     * conflict.
+     * @param spHash
+     * @param crHash
+     * @param gvnHash
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    boolean mergeFile(String spHash, String crHash, String gvnHash,
+                      File file) throws IOException {
+        _Index.forget(file);
+        if (crHash == null || gvnHash == null) {
+            crBlobGvnBlob(blobOf(crHash), blobOf(gvnHash), file);
+            return true;
+        }
+        byte[] base = spHash == null ? new byte[0] : _Objects.get(spHash);
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file))) {
+            return Merge3.merge(base, _Objects.get(crHash),
+                    _Objects.get(gvnHash), out) > 0;
+        }
+    }
+
+    /** Returns the blob HASH, or null if HASH is null.
+     * @param hash */
+    private Blob blobOf(String hash) {
+        return hash == null ? null : new Blob(hash, _Objects);
+    }
+
+    /** Checks that BRANCH can be merged into the current branch, and
+     * returns their split point.
      * @param branch
+     * @return
      * @throws IOException
      */
-    void errorMerge(Branch branch) throws IOException {
+    Commit errorMerge(Branch branch) throws IOException {
         if (branch == null) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name does not exist.");
         }
         Commit crHead = _Branchpoint.head(), givenHead = branch.head();
         boolean addStage = !_Stage.rtAddition().isEmpty();
         boolean rmStage = !_Stage.rtRemoval().isEmpty();
         if (addStage || rmStage) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw Utils.error("You have uncommitted changes.");
         }
         if (_Branchpoint.name().equals(branch.name())) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw Utils.error("Cannot merge a branch with itself.");
         }
-        String spPtHash = splitWhere(_Branchpoint, branch).getHash();
+        Commit spPoint = splitWhere(_Branchpoint, branch);
+        String spPtHash = spPoint.getHash();
         boolean smGvnCom = spPtHash.equals(givenHead.getHash());
         boolean smCrrCom = spPtHash.equals(crHead.getHash());
         if (smGvnCom) {
-            System.out.println("Given branch is an ancestor"
+            throw Utils.error("Given branch is an ancestor"
                     + " of the current branch.");
-            System.exit(0);
         }
         if (smCrrCom) {
             coBranch(branch.name());
-            for (String s : branch.removed().keySet()) {
-                Utils.restrictedDelete(s);
-            }
-            System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
-        }
-    }
-
-    /**
-     *
-     * @param crrTracking
-     * @param gvn
-     * @return
-     */
-    boolean cases(HashMap<String, Blob> crrTracking, Branch gvn) {
-        Commit gvnHead = gvn.head();
-        for (String s : crrTracking.keySet()) {
-            if (gvnHead.getParent().getBlobs() != null) {
-
-                boolean case1 = gvn.removed().isEmpty();
-                boolean case2 = _Branchpoint.removed().isEmpty();
-                boolean case3 = gvnHead.getParent().
-                        getBlobs().containsKey(s);
-                boolean case4 = gvnHead.whereBlob(s) == null;
-                if (case1 && case2 && case3 && case4) {
-                    Blob blob = gvnHead.getParent().whereBlob(s);
-                    if (!crrTracking.get(s).contentSameDif(blob)) {
-                        crBlobGvnBlob(crrTracking.get(s),
-                                blob, new File(_CWD, s));
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
-    }
-
-    /**
-     *
-     * @param given
-     */
-    void checkRemoveGiven(Branch given) {
-        if (!given.removed().isEmpty()) {
-            for (String fileName : given.removed().keySet()) {
-                File file = new File(_CWD, fileName);
-                if (file.exists()) {
-                    Utils.restrictedDelete(fileName);
-                }
-            }
-        }
-    }
-
-    /**
-     *
-     * @param gvnBranch
-     * @param spPoint
-     * @return
-     */
-    boolean lastConflict(Branch gvnBranch, Commit spPoint) {
-        Commit crrHead = _Branchpoint.head();
-        Commit gvnHead = gvnBranch.head();
-        if (crrHead.getMessage().length() > 4) {
-            int i = crrHead.getMessage().indexOf(' ');
-            String word = crrHead.getMessage().substring(0, i);
-            if (word.equals("Merged")) {
-                return false;
-            }
-            HashMap<String, Blob> crrTracking = crrHead.getBlobs();
-            if (crrTracking != null) {
-                for (String s : gvnBranch.removed().keySet()) {
-                    boolean modifyingCrr = modiFilename(s, spPoint, crrHead);
-                    if (crrTracking.containsKey(s) && modifyingCrr) {
-                        Blob gvnBlob = gvnHead.whereBlob(s);
-                        Blob crBlob = crrHead.whereBlob(s);
-                        crBlobGvnBlob(crBlob, gvnBlob,
-                                new File(_CWD, s));
-                        return true;
-                    }
-                }
-            }
+            throw Utils.error("Current branch fast-forwarded.");
         }
-        return false;
+        return spPoint;
     }
 
     /**
@@ -839,10 +1370,10 @@ public class Methods implements Serializable {
     void whattoPrint(boolean cfl, String brNAme) {
         String crName = _Branchpoint.name();
         if (!cfl) {
-            commit("Merged " + brNAme + " into " + crName + ".");
+            commit("Merged " + brNAme + " into " + crName + ".", true);
         } else {
             System.out.println("Encountered a merge conflict.");
-            commit("Encountered a merge conflict.");
+            commit("Encountered a merge conflict.", true);
         }
     }
 
@@ -867,51 +1398,86 @@ public class Methods implements Serializable {
                 + gvnContent
                 + ">>>>>>>\n";
         Utils.writeContents(file, msg);
+        _Index.forget(file);
     }
 
-    /**
-     *
-     * @param fileName
-     * @param spPoint
-     * @param head
-     * @return
-     */
-    boolean modiFilename(String fileName,
-                         Commit spPoint, Commit head) {
-        boolean modifying = false;
-
-
-        if (spPoint.getBlobs() == null) {
-            return true;
-        }
-        Blob dividingHash = spPoint.whereBlob(fileName);
-        Blob hashBr = head.whereBlob(fileName);
-
-        if (dividingHash != null && hashBr != null) {
-            modifying = !dividingHash.hash().equals(hashBr.hash());
-        }
-        return modifying;
-    }
-
-    /**
-     *
+    /** Returns the latest common ancestor of the heads of CURR and MERGE,
+     * found in the commit graph without reading any other commits.
      * @param curr
      * @param merge
      * @return
      */
     Commit splitWhere(Branch curr, Branch merge) {
+        String hash = graph().mergeBase(curr.headHash(), merge.headHash());
+        return hash == null ? null : _Objects.getCommit(hash);
+    }
 
-        ArrayList<String> everHahsNow = curr.rtAllHash();
-        Commit arrow = merge.head();
+    /** Reports how many objects the store holds and the space saved by
+     * keeping one copy of each distinct blob content, however many
+     * paths and commits refer to it. */
+    void countObjects() {
+        HashMap<String, Long> unique = new HashMap<String, Long>();
+        long[] totals = new long[2];
+        for (String hash : commitIds()) {
+            _Objects.getCommit(hash).snapshot().forEach((name, blob) -> {
+                Long size = unique.get(blob);
+                if (size == null) {
+                    size = _Objects.size(blob);
+                    unique.put(blob, size);
+                }
+                totals[0] += 1;
+                totals[1] += size;
+            });
+        }
+        long refs = totals[0], logical = totals[1];
+        long stored = 0;
+        for (long size : unique.values()) {
+            stored += size;
+        }
+        long[] usage = _Objects.usage();
+        System.out.println("objects: " + usage[0]);
+        System.out.println("size-on-disk: " + usage[1]);
+        System.out.println("blob-references: " + refs);
+        System.out.println("unique-blobs: " + unique.size());
+        System.out.println("referenced-size: " + logical);
+        System.out.println("stored-size: " + stored);
+        System.out.println("saved-by-dedup: " + (logical - stored));
+    }
 
-        while (arrow != null) {
-            String hashArrow = arrow.getHash();
-            if (everHahsNow.contains(hashArrow)) {
-                return arrow;
-            }
-            arrow = arrow.getParent();
-        }
-        return null;
+    /** Packs every blob of every commit into one pack file in which the
+     * versions of each path form delta chains, each at most pack.depth
+     * deltas long (default 10).  Reports the space saved, the longest
+     * chain, and the slowest time taken to read back a packed blob,
+     * which bounds what repacking adds to checkout. */
+    void repack() throws IOException {
+        int maxDepth = _Config.getInt(Config.PACK_DEPTH, 10);
+        LinkedHashMap<String, List<String>> byPath =
+            new LinkedHashMap<String, List<String>>();
+        HashSet<String> seen = new HashSet<String>();
+        long before = _Objects.usage()[1];
+        for (String hash : commitIds()) {
+            _Objects.getCommit(hash).snapshot().forEach((name, blob) -> {
+                if (seen.add(blob)) {
+                    byPath.computeIfAbsent(name,
+                        k -> new ArrayList<String>()).add(blob);
+                }
+            });
+        }
+        Pack pack = _Objects.repack(new ArrayList<List<String>>(
+                byPath.values()), maxDepth);
+        int deepest = 0;
+        long slowest = 0;
+        for (String hash : seen) {
+            deepest = Math.max(deepest, pack.depth(hash));
+            long start = System.nanoTime();
+            pack.read(hash);
+            slowest = Math.max(slowest, System.nanoTime() - start);
+        }
+        System.out.println("packed-blobs: " + pack.count());
+        System.out.println("size-before: " + before);
+        System.out.println("size-after: " + _Objects.usage()[1]);
+        System.out.println("max-chain-depth: " + deepest);
+        System.out.printf("slowest-read-ms: %.3f%n", slowest / 1e6);
     }
 
     /** Saves the given login information under the given remote name.
@@ -922,8 +1488,7 @@ public class Methods implements Serializable {
         String rmName = args[1];
         String login = args[2];
         if (_Remotes.containsKey(rmName)) {
-            System.out.println("A remote with that name already exists.");
-            System.exit(0);
+            throw Utils.error("A remote with that name already exists.");
         }
         _Remotes.put(rmName, login);
     }
@@ -936,8 +1501,7 @@ public class Methods implements Serializable {
      * */
     void rmRemote(String remoteName) {
         if (!_Remotes.containsKey(remoteName)) {
-            System.out.println("A remote with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A remote with that name does not exist.");
         }
         _Remotes.remove(remoteName);
     }
@@ -956,36 +1520,51 @@ public class Methods implements Serializable {
         String login = _Remotes.get(rmName);
         Methods command = null;
         File rmFile = new File(_CWD, login);
-        File rmRepo = new File(rmFile, "data");
         if (rmFile.exists()) {
-            command = Utils.readObject(rmRepo, Methods.class);
+            command = Methods.load(rmFile);
         } else {
-            System.out.println("Remote directory not found.");
-            System.exit(0);
+            throw Utils.error("Remote directory not found.");
         }
         Commit crrHead = _Branchpoint.head();
-        Commit copy = new Commit(crrHead);
         Branch rmBranch = command.whereBranch(brNAme);
         if (rmBranch == null) {
-            Branch branch = new Branch(brNAme, copy);
-            command.addBranch(branch);
-            System.exit(0);
+            throw new GitletException();
         }
         Commit rmHead = rmBranch.head();
-        if (!crrHead.historyOrNot(rmHead)) {
-            System.out.println("Please pull down"
+        if (!graph().isAncestor(rmHead.getHash(), crrHead.getHash())) {
+            throw Utils.error("Please pull down"
                     + " remote changes before pushing.");
-            System.exit(0);
         }
-        rmBranch.gvCommtoHead(copy);
-        File newSave = new File(rmFile, "data");
-        Utils.writeObject(newSave, command);
+        command.copyHistory(crrHead);
+        rmBranch.gvCommtoHead(command._Objects.getCommit(crrHead.getHash()));
+        try {
+            command.save();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
-    /** Helper function of the push.
-     * @param branch */
-    public void addBranch(Branch branch) {
-        _Branches.add(branch);
+    /** Helper function of the push and fetch.
+     * Records HEAD and every ancestor missing from the commit graph of
+     * this repository, and so from its journal, as commits of it, copying
+     * those whose objects it lacks, together with their trees and blobs,
+     * from the object store HEAD is kept in.  Objects left by a command
+     * that failed before saving are recorded like the rest.
+     * @param head */
+    void copyHistory(Commit head) {
+        CommitGraph graph = graph();
+        journal();
+        long now = System.currentTimeMillis();
+        for (Commit arrow = head; arrow != null
+                 && graph.position(arrow.getHash()) == CommitGraph.NONE;
+             arrow = arrow.getParent()) {
+            if (!_Objects.contains(arrow.getHash())) {
+                arrow.copyFiles(_Objects);
+                _Objects.copyFrom(arrow.store(), arrow.getHash());
+            }
+            _Journal.add(arrow, now);
+        }
+        graphAdd(head);
     }
 
 
@@ -1007,45 +1586,31 @@ public class Methods implements Serializable {
     void fetch(String rmName, String brName) {
         String loginInfo = _Remotes.get(rmName);
         File rmCWD = new File(_CWD, loginInfo);
-        File data = new File(rmCWD, "data");
         Methods command = null;
         _Fetch = true;
 
         if (rmCWD.exists()) {
-            command = Utils.readObject(data, Methods.class);
+            command = Methods.load(rmCWD);
         } else {
-            System.out.println("Remote directory not found.");
-            System.exit(0);
+            throw Utils.error("Remote directory not found.");
         }
         if (command.whereBranch(brName) == null) {
-            System.out.println("That remote does not have that branch.");
-            System.exit(0);
+            throw Utils.error("That remote does not have that branch.");
         }
-        Commit crHead = _Branchpoint.head();
-        Commit rmHead = command.whereBranch(brName).head();
-        Commit evCopy = new Commit(rmHead);
-        Commit copy = new Commit(rmHead);
-        Commit arrow = copy;
-        if (!arrow.getHash().equals(crHead.getHash())) {
-            while (arrow.getParent() != null) {
-                if (arrow.getParent().
-                        getHash().equals(crHead.getHash())) {
-                    break;
-                }
-                arrow = arrow.getParent();
-            }
+        if (!RefStore.valid(brName + "@" + rmName)) {
+            throw Utils.error("Invalid branch name.");
         }
-        arrow.setParent(_Branchpoint.head());
+        Commit rmHead = command.whereBranch(brName).head();
+        copyHistory(rmHead);
+        Commit copy = _Objects.getCommit(rmHead.getHash());
         String nbrName = brName + "@" + rmName;
         Branch newBranch = whereBranch((nbrName));
         if (newBranch != null) {
             newBranch.gvCommtoHead(copy);
         } else {
-            Branch branch = new Branch(nbrName, evCopy);
-            _Branches.add(branch);
+            Branch branch = new Branch(nbrName, copy);
+            _Branches.put(nbrName, branch);
         }
-        File saveNe = new File(rmCWD, "data");
-        Utils.writeObject(saveNe, command);
     }
 
     /** Fetches branch [remote name]/[remote branch name]
@@ -0,0 +1,476 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** Content-addressed store of the immutable commit and blob objects of
+ *  one repository.  The object whose SHA-1 is XXYYYY... lives in the file
+ *  objects/XX/YYYY... under the .gitlet directory, so a command reads
+ *  only the objects it actually touches and writes only the new ones.
+ *  Each object file starts with a HEADER_SIZE-byte header: the bytes of
+ *  MAGIC, the id of the Codec its content is compressed with, and the
+ *  uncompressed size as 8 bytes.  Readers stream the content through
+ *  that codec, so a blob decompresses straight into the worktree file.
+ *  Files without the header are read as uncompressed content.
+ *  Objects that are not loose files are looked up in the Packs under
+ *  objects/pack, which repack creates.
+ *  @author Jenna Jang
+ */
+class ObjectStore {
+
+    /** First bytes of every object file. */
+    private static final byte[] MAGIC = { 'G', 'L', 'T' };
+
+    /** Length of the header of an object file. */
+    static final int HEADER_SIZE = MAGIC.length + 1 + 8;
+
+    /** Directory holding every object. */
+    private File _Dir;
+
+    /** Codec new objects are compressed with. */
+    private Codec _Codec;
+
+    /** Commits read or written most recently. */
+    private CommitCache _Commits;
+
+    /** Trees read most recently, at most CommitCache.DEFAULT_SIZE. */
+    private LinkedHashMap<String, Tree> _Trees =
+        new LinkedHashMap<String, Tree>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tree> e) {
+                return size() > CommitCache.DEFAULT_SIZE;
+            }
+        };
+
+    /** Object files written since the last sync. */
+    private List<File> _Written =
+        Collections.synchronizedList(new ArrayList<File>());
+
+    /** Whether sync forces the written objects to disk. */
+    private boolean _Sync;
+
+    /** The packs of the store, read on first use. */
+    private ArrayList<Pack> _Packs;
+
+    /** The store kept under the .gitlet directory GITLETDIR, configured
+     *  by CONFIG. */
+    ObjectStore(File gitletDir, Config config) {
+        _Dir = Utils.join(gitletDir, "objects");
+        _Commits = new CommitCache(config.getInt(Config.COMMIT_CACHE,
+                CommitCache.DEFAULT_SIZE));
+        _Codec = Codec.forName(config.get(Config.COMPRESSION,
+                Codec.DEFLATE.name()));
+        if (_Codec == null) {
+            throw Utils.error("Unknown compression codec.");
+        }
+        _Sync = config.get(Config.FSYNC, "true").equals("true");
+    }
+
+    /** Returns the codec new objects are compressed with. */
+    Codec codec() {
+        return _Codec;
+    }
+
+    /** Creates the (empty) objects directory. */
+    void create() {
+        _Dir.mkdirs();
+    }
+
+    /** Returns the file holding the object HASH. */
+    File file(String hash) {
+        return Utils.join(_Dir, hash.substring(0, 2), hash.substring(2));
+    }
+
+    /** Returns true iff the object HASH is in the store.
+     * @param hash */
+    boolean contains(String hash) {
+        return file(hash).exists() || packOf(hash) != null;
+    }
+
+    /** Stores CONTENTS as the object HASH unless it is already there.
+     *  The bytes go to a temporary file that is then renamed into place,
+     *  so a reader never sees a half-written object.
+     * @param hash
+     * @param contents */
+    void put(String hash, byte[] contents) {
+        File file = file(hash);
+        if (contains(hash)) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (OutputStream out = create(tmp, contents.length)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        moveInto(tmp, file);
+    }
+
+    /** Replaces the content of the loose object HASH with CONTENTS, the
+     *  same object in another format, through a temporary file.
+     * @param hash
+     * @param contents */
+    void rewrite(String hash, byte[] contents) {
+        File file = file(hash);
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (OutputStream out = create(tmp, contents.length)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        moveInto(tmp, file);
+    }
+
+    /** Returns a stream that writes the header for SIZE bytes of content
+     *  to the new object file FILE and compresses what is then written
+     *  to it.
+     * @param file
+     * @param size */
+    private OutputStream create(File file, long size) throws IOException {
+        OutputStream out =
+            new BufferedOutputStream(new FileOutputStream(file));
+        DataOutputStream header = new DataOutputStream(out);
+        header.write(MAGIC);
+        header.writeByte(_Codec.id());
+        header.writeLong(size);
+        return _Codec.compress(out);
+    }
+
+    /** Returns a stream of the content of the object HASH.
+     * @param hash */
+    InputStream open(String hash) throws IOException {
+        if (!file(hash).exists()) {
+            Pack pack = packOf(hash);
+            if (pack != null) {
+                return new ByteArrayInputStream(pack.read(hash));
+            }
+        }
+        BufferedInputStream in = new BufferedInputStream(
+                new FileInputStream(file(hash)), Utils.CHUNK_SIZE);
+        in.mark(HEADER_SIZE);
+        byte[] header = new byte[HEADER_SIZE];
+        int n = in.readNBytes(header, 0, HEADER_SIZE);
+        if (n < HEADER_SIZE || header[0] != MAGIC[0]
+                || header[1] != MAGIC[1] || header[2] != MAGIC[2]) {
+            in.reset();
+            return in;
+        }
+        return Codec.forId(header[MAGIC.length]).decompress(in);
+    }
+
+    /** Returns the size in bytes of the content of the object HASH.
+     * @param hash */
+    long size(String hash) {
+        File file = file(hash);
+        if (!file.exists() && packOf(hash) != null) {
+            return packOf(hash).size(hash);
+        }
+        try (DataInputStream in =
+                 new DataInputStream(new FileInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            if (file.length() >= HEADER_SIZE
+                    && in.read(magic) == MAGIC.length
+                    && magic[0] == MAGIC[0] && magic[1] == MAGIC[1]
+                    && magic[2] == MAGIC[2]) {
+                in.readByte();
+                return in.readLong();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return file.length();
+    }
+
+    /** Returns the number of objects in the store and the bytes they
+     *  take on disk, as a two-element array. */
+    long[] usage() {
+        long[] result = new long[2];
+        File[] dirs = _Dir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.equals(packDir())) {
+                    continue;
+                }
+                for (File obj : dir.listFiles()) {
+                    if (!obj.getName().endsWith(".tmp")) {
+                        result[0] += 1;
+                        result[1] += obj.length();
+                    }
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            result[0] += pack.count();
+            result[1] += pack.dataFile().length();
+        }
+        return result;
+    }
+
+    /** Returns the directory holding the packs. */
+    private File packDir() {
+        return Utils.join(_Dir, "pack");
+    }
+
+    /** Returns the packs of the store, read on first use by whichever
+     *  thread gets there first. */
+    synchronized List<Pack> packs() {
+        if (_Packs == null) {
+            _Packs = new ArrayList<Pack>();
+            File[] idxs = packDir().listFiles((d, n) -> n.endsWith(".idx"));
+            if (idxs != null) {
+                for (File idx : idxs) {
+                    _Packs.add(new Pack(idx));
+                }
+            }
+        }
+        return _Packs;
+    }
+
+    /** Returns the pack holding HASH, or null. */
+    private Pack packOf(String hash) {
+        for (Pack pack : packs()) {
+            if (pack.contains(hash)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Packs the blobs in CHAINS, each listing the versions of one path
+     *  oldest first, into a single new pack of delta chains at most
+     *  MAXDEPTH deep.  The loose copies of those blobs and the old packs
+     *  are then deleted.  Returns the new pack.
+     * @param chains
+     * @param maxDepth */
+    Pack repack(List<List<String>> chains, int maxDepth) throws IOException {
+        List<Pack> old = new ArrayList<Pack>(packs());
+        File idx = Pack.write(packDir(), this, chains, maxDepth, _Codec);
+        Pack pack = new Pack(idx);
+        _Packs.add(0, pack);
+        for (List<String> chain : chains) {
+            for (String hash : chain) {
+                file(hash).delete();
+            }
+        }
+        for (Pack p : old) {
+            if (!p.dataFile().equals(pack.dataFile())) {
+                _Packs.remove(p);
+                p.dataFile().delete();
+                new File(p.dataFile().getPath().replace(".pack", ".idx"))
+                    .delete();
+            }
+        }
+        return pack;
+    }
+
+    /** Returns the contents of the object HASH.
+     * @param hash */
+    byte[] get(String hash) {
+        try (InputStream in = open(hash)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Streams the bytes of FILE into the store in chunks, hashing them
+     *  as they are compressed, and returns the hash of the blob they form.
+     *  The copy goes to a temporary file that is renamed into place once
+     *  the hash is known, or dropped if the store already has it.
+     * @param file */
+    String putFile(File file) {
+        MessageDigest md = Utils.sha1Digest();
+        byte[] chunk = Utils.chunk();
+        File tmp;
+        try {
+            _Dir.mkdirs();
+            tmp = File.createTempFile("blob", ".tmp", _Dir);
+            long expected = file.length(), size = 0;
+            try (InputStream in = new FileInputStream(file);
+                 OutputStream out = create(tmp, expected)) {
+                for (int n = in.read(chunk); n > 0; n = in.read(chunk)) {
+                    md.update(chunk, 0, n);
+                    out.write(chunk, 0, n);
+                    size += n;
+                }
+            }
+            if (size != expected) {
+                try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+                    raf.seek(MAGIC.length + 1);
+                    raf.writeLong(size);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String hash = Utils.toHex(md.digest());
+        File dest = file(hash);
+        if (contains(hash)) {
+            tmp.delete();
+        } else {
+            dest.getParentFile().mkdirs();
+            moveInto(tmp, dest);
+        }
+        return hash;
+    }
+
+    /** Writes the bytes of the object HASH to FILE.
+     * @param hash
+     * @param file */
+    void copyTo(String hash, File file) {
+        byte[] chunk = Utils.chunk();
+        try (InputStream in = open(hash);
+             OutputStream out = new FileOutputStream(file)) {
+            for (int n = in.read(chunk); n > 0; n = in.read(chunk)) {
+                out.write(chunk, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores COMMIT, whose parent is kept only as a hash.  Its hash must
+     *  not already name a stored object.
+     * @param commit */
+    void putCommit(Commit commit) {
+        if (contains(commit.getHash())) {
+            throw new IllegalArgumentException("commit id "
+                    + commit.getHash() + " is already taken");
+        }
+        commit.setStore(this);
+        put(commit.getHash(), commit.encode());
+        _Commits.put(commit.getHash(), commit);
+    }
+
+    /** Returns the tree HASH, or an empty tree if HASH is null.  The trees
+     *  read last are kept, as commits that share a directory read it
+     *  again and again.
+     * @param hash */
+    Tree getTree(String hash) {
+        if (hash == null) {
+            return Tree.read(this, null);
+        }
+        Tree tree = _Trees.get(hash);
+        if (tree == null) {
+            tree = Tree.read(this, hash);
+            _Trees.put(hash, tree);
+        }
+        return tree;
+    }
+
+    /** Returns the commit HASH, or null if there is no such object.
+     * @param hash */
+    Commit getCommit(String hash) {
+        Commit commit = _Commits.get(hash);
+        if (commit == null) {
+            if (!contains(hash)) {
+                return null;
+            }
+            commit = Commit.decode(get(hash));
+            commit.setStore(this);
+            _Commits.put(hash, commit);
+        }
+        return commit;
+    }
+
+    /** Makes every blob in BLOBS read its content from this store.
+     * @param blobs */
+    void attach(Map<String, Blob> blobs) {
+        if (blobs != null) {
+            for (Blob blob : blobs.values()) {
+                blob.setStore(this);
+            }
+        }
+    }
+
+    /** Copies the object HASH from the store FROM unless it is already
+     *  here.
+     * @param from
+     * @param hash */
+    void copyFrom(ObjectStore from, String hash) {
+        File file = file(hash);
+        if (contains(hash)) {
+            return;
+        }
+        if (!from.file(hash).exists()) {
+            put(hash, from.get(hash));
+            return;
+        }
+        file.getParentFile().mkdirs();
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            Files.copy(from.file(hash).toPath(), tmp.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        moveInto(tmp, file);
+    }
+
+    /** Atomically renames TMP to FILE. */
+    private void moveInto(File tmp, File file) {
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _Written.add(file);
+    }
+
+    /** Forces every object file written since the last call, and the
+     *  directories naming them, to disk, unless core.fsync is false.
+     *  Objects are written unsynced as they are made and synced here in
+     *  one pass, before anything that refers to them is saved. */
+    void sync() {
+        if (_Sync) {
+            TreeSet<File> dirs = new TreeSet<File>();
+            for (File file : _Written) {
+                force(file);
+                dirs.add(file.getParentFile());
+            }
+            if (!dirs.isEmpty()) {
+                dirs.add(_Dir);
+            }
+            for (File dir : dirs) {
+                force(dir);
+            }
+        }
+        _Written.clear();
+    }
+
+    /** Forces FILE, a file or directory, to disk.  Directories that
+     *  cannot be opened for it, as on some systems, are skipped. */
+    private static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+}
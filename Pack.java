@@ -0,0 +1,384 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A pack file holding many blobs, most of them as deltas against an
+ *  earlier version of the same path.  pack-ID.pack holds the entries and
+ *  pack-ID.idx the sorted blob hashes with the offsets of their entries.
+ *  Each entry is the blob hash, its kind (FULL or DELTA), for a delta the
+ *  hash of its base, the uncompressed size, the codec id, and the
+ *  compressed payload.  A delta is a list of COPY (a byte range of the
+ *  base) and INSERT (new bytes) instructions computed with Diff, by Myers'
+ *  algorithm, over the lines of the two versions.  Chains are at most a
+ *  fixed depth long, so reading any blob applies a bounded number of
+ *  deltas.
+ *  @author Jenna Jang
+ */
+class Pack {
+
+    /** Entry kinds. */
+    private static final int FULL = 0, DELTA = 1;
+    /** Delta instructions. */
+    private static final int COPY = 0, INSERT = 1, END = 2;
+    /** Bound on the work of one diff: the lines diffed times the lines
+     *  inserted or deleted. */
+    static final long MAX_DIFF_STEPS = 100_000_000L;
+    /** Bytes in a binary SHA-1 hash. */
+    private static final int HASH_BYTES = 20;
+
+    /** The pack whose index file is IDX. */
+    Pack(File idx) {
+        _Data = new File(idx.getParentFile(),
+                idx.getName().replace(".idx", ".pack"));
+        byte[] index = Utils.readContents(idx);
+        int count = (index.length) / (HASH_BYTES + 8);
+        _Hashes = new byte[count * HASH_BYTES];
+        _Offsets = new long[count];
+        for (int i = 0, p = 0; i < count; i += 1) {
+            System.arraycopy(index, p, _Hashes, i * HASH_BYTES, HASH_BYTES);
+            p += HASH_BYTES;
+            long offset = 0;
+            for (int k = 0; k < 8; k += 1) {
+                offset = (offset << 8) | (index[p++] & 0xff);
+            }
+            _Offsets[i] = offset;
+        }
+    }
+
+    /** Returns the pack file. */
+    File dataFile() {
+        return _Data;
+    }
+
+    /** Returns the number of blobs in this pack. */
+    int count() {
+        return _Offsets.length;
+    }
+
+    /** Returns true iff this pack holds the blob HASH.
+     * @param hash */
+    boolean contains(String hash) {
+        return find(hash) >= 0;
+    }
+
+    /** Returns the uncompressed size of the blob HASH.
+     * @param hash */
+    long size(String hash) {
+        try (RandomAccessFile in = new RandomAccessFile(_Data, "r")) {
+            return readHeader(in, hash).size;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the content of the blob HASH, applying its delta chain.
+     * @param hash */
+    byte[] read(String hash) {
+        try (RandomAccessFile in = new RandomAccessFile(_Data, "r")) {
+            return read(in, hash);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of deltas applied to read the blob HASH.
+     * @param hash */
+    int depth(String hash) {
+        try (RandomAccessFile in = new RandomAccessFile(_Data, "r")) {
+            int depth = 0;
+            for (Entry e = readHeader(in, hash); e.base != null;
+                 e = readHeader(in, e.base)) {
+                depth += 1;
+            }
+            return depth;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the content of the blob HASH read from IN. */
+    private byte[] read(RandomAccessFile in, String hash)
+        throws IOException {
+        Entry entry = readHeader(in, hash);
+        byte[] payload = new byte[entry.length];
+        in.readFully(payload);
+        InputStream body = Codec.forId(entry.codec)
+            .decompress(new ByteArrayInputStream(payload));
+        byte[] data = body.readAllBytes();
+        if (entry.base == null) {
+            return data;
+        }
+        return apply(read(in, entry.base), data, entry.size);
+    }
+
+    /** Reads the header of the entry for HASH from IN, leaving IN at its
+     *  payload. */
+    private Entry readHeader(RandomAccessFile in, String hash)
+        throws IOException {
+        int k = find(hash);
+        if (k < 0) {
+            throw new IllegalArgumentException("not in pack: " + hash);
+        }
+        in.seek(_Offsets[k] + HASH_BYTES);
+        Entry entry = new Entry();
+        if (in.readByte() == DELTA) {
+            byte[] base = new byte[HASH_BYTES];
+            in.readFully(base);
+            entry.base = Utils.toHex(base);
+        }
+        entry.size = in.readLong();
+        entry.codec = in.readByte();
+        entry.length = in.readInt();
+        return entry;
+    }
+
+    /** Returns the index of HASH in _Hashes, or -1. */
+    private int find(String hash) {
+        byte[] key = Utils.fromHex(hash);
+        int lo = 0, hi = _Offsets.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Arrays.compareUnsigned(_Hashes, mid * HASH_BYTES,
+                    (mid + 1) * HASH_BYTES, key, 0, HASH_BYTES);
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Writes a pack into DIR of the blobs in CHAINS, read from STORE.
+     *  Each chain lists versions of one path, oldest first; every version
+     *  after the first becomes a delta against the one before it unless
+     *  that would exceed MAXDEPTH deltas or not save space.  Payloads are
+     *  compressed with CODEC.  Returns the index file of the new pack.
+     * @param dir
+     * @param store
+     * @param chains
+     * @param maxDepth
+     * @param codec */
+    static File write(File dir, ObjectStore store, List<List<String>> chains,
+                      int maxDepth, Codec codec) throws IOException {
+        dir.mkdirs();
+        File tmp = File.createTempFile("pack", ".tmp", dir);
+        ArrayList<String> hashes = new ArrayList<>();
+        ArrayList<Long> offsets = new ArrayList<>();
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            out.setLength(0);
+            for (List<String> chain : chains) {
+                byte[] prev = null;
+                String prevHash = null;
+                int depth = 0;
+                for (String hash : chain) {
+                    byte[] data = store.get(hash);
+                    byte[] delta = null;
+                    if (prev != null && depth < maxDepth) {
+                        delta = delta(prev, data);
+                        if (delta != null && delta.length > data.length / 2) {
+                            delta = null;
+                        }
+                    }
+                    hashes.add(hash);
+                    offsets.add(out.getFilePointer());
+                    out.write(Utils.fromHex(hash));
+                    if (delta == null) {
+                        out.writeByte(FULL);
+                        depth = 0;
+                    } else {
+                        out.writeByte(DELTA);
+                        out.write(Utils.fromHex(prevHash));
+                        depth += 1;
+                    }
+                    out.writeLong(data.length);
+                    out.writeByte(codec.id());
+                    byte[] payload = compress(codec,
+                            delta == null ? data : delta);
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                    prev = data;
+                    prevHash = hash;
+                }
+            }
+        }
+        Integer[] order = new Integer[hashes.size()];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> hashes.get(a).compareTo(hashes.get(b)));
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream idx = new DataOutputStream(index);
+        for (int i : order) {
+            idx.write(Utils.fromHex(hashes.get(i)));
+            idx.writeLong(offsets.get(i));
+        }
+        idx.close();
+        String id = Utils.sha1(index.toByteArray());
+        File pack = new File(dir, "pack-" + id + ".pack");
+        File idxFile = new File(dir, "pack-" + id + ".idx");
+        if (!tmp.renameTo(pack)) {
+            throw new IOException("cannot create " + pack);
+        }
+        Utils.writeContents(idxFile, index.toByteArray());
+        return idxFile;
+    }
+
+    /** Returns DATA compressed with CODEC. */
+    private static byte[] compress(Codec codec, byte[] data)
+        throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (OutputStream out = codec.compress(result)) {
+            out.write(data);
+        }
+        return result.toByteArray();
+    }
+
+    /** Returns instructions that turn BASE into TARGET, found by diffing
+     *  their lines, or null if they differ in too many lines to diff.
+     *  Whole lines common to the start or end of both are found by
+     *  comparing bytes and copied without being diffed; Diff numbers the
+     *  rest of the lines straight from the bytes. */
+    static byte[] delta(byte[] base, byte[] target) throws IOException {
+        int n1 = base.length, n2 = target.length;
+        int head = 0, tail = 0;
+        while (head < n1 && head < n2 && base[head] == target[head]) {
+            head += 1;
+        }
+        if (head < n1 || head < n2) {
+            while (head > 0 && base[head - 1] != '\n') {
+                head -= 1;
+            }
+        }
+        while (tail < n1 - head && tail < n2 - head
+               && base[n1 - 1 - tail] == target[n2 - 1 - tail]) {
+            tail += 1;
+        }
+        while (tail > 0 && !(lineStart(base, head, n1 - tail)
+                             && lineStart(target, head, n2 - tail))) {
+            tail -= 1;
+        }
+        int[] starts1 = starts(base, head, n1 - tail),
+            starts2 = starts(target, head, n2 - tail);
+        long size = starts1.length + starts2.length - 2;
+        Diff diff = new Diff(Diff.Algorithm.MYERS);
+        diff.setSequences(ByteBuffer.wrap(base, head, n1 - tail - head),
+                          ByteBuffer.wrap(target, head, n2 - tail - head));
+        diff.setEditLimit((int) Math.min(size / 2,
+                                         MAX_DIFF_STEPS / Math.max(size, 1)));
+        int[] edits = diff.diffs();
+        if (edits == null) {
+            return null;
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        int next = 0;
+        for (int k = 0; k < edits.length; k += 4) {
+            copy(out, next, starts1[edits[k]]);
+            int from = starts2[edits[k + 2]];
+            int to = starts2[edits[k + 2] + edits[k + 3]];
+            if (to > from) {
+                out.writeByte(INSERT);
+                out.writeInt(to - from);
+                out.write(target, from, to - from);
+            }
+            next = starts1[edits[k] + edits[k + 1]];
+        }
+        copy(out, next, n1);
+        out.writeByte(END);
+        out.close();
+        return result.toByteArray();
+    }
+
+    /** Writes to OUT an instruction copying bytes FROM up to TO of the
+     *  base. */
+    private static void copy(DataOutputStream out, int from, int to)
+        throws IOException {
+        if (to > from) {
+            out.writeByte(COPY);
+            out.writeInt(from);
+            out.writeInt(to - from);
+        }
+    }
+
+    /** Returns true iff byte P of DATA starts a line, counting FIRST as
+     *  the start of one. */
+    private static boolean lineStart(byte[] data, int first, int p) {
+        return p == first || data[p - 1] == '\n';
+    }
+
+    /** Returns the result, of SIZE bytes, of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta, long size)
+        throws IOException {
+        byte[] result = new byte[(int) size];
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(delta));
+        int p = 0;
+        for (int op = in.readByte(); op != END; op = in.readByte()) {
+            if (op == COPY) {
+                int start = in.readInt(), len = in.readInt();
+                System.arraycopy(base, start, result, p, len);
+                p += len;
+            } else {
+                int len = in.readInt();
+                in.readFully(result, p, len);
+                p += len;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the offsets at which each line of bytes FROM up to TO of
+     *  DATA starts, a line ending after a newline, followed by TO. */
+    static int[] starts(byte[] data, int from, int to) {
+        int n = 0;
+        for (int p = from; p < to; p += 1) {
+            if (data[p] == '\n' || p == to - 1) {
+                n += 1;
+            }
+        }
+        int[] result = new int[n + 1];
+        result[0] = from;
+        for (int p = from, i = 1; p < to; p += 1) {
+            if (data[p] == '\n' || p == to - 1) {
+                result[i] = p + 1;
+                i += 1;
+            }
+        }
+        return result;
+    }
+
+    /** The header of a pack entry. */
+    private static class Entry {
+        /** Hash of the base of a delta, or null. */
+        private String base;
+        /** Uncompressed size of the blob. */
+        private long size;
+        /** Id of the codec of the payload. */
+        private byte codec;
+        /** Length of the payload. */
+        private int length;
+    }
+
+    /** The pack file. */
+    private File _Data;
+    /** The sorted blob hashes, 20 bytes each. */
+    private byte[] _Hashes;
+    /** Offsets in the pack file of the entries, in the order of
+     *  _Hashes. */
+    private long[] _Offsets;
+}
@@ -0,0 +1,286 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** The branches of a repository, each naming the hash of its head commit.
+ *  A branch is kept either as a loose ref, the file .gitlet/refs/NAME
+ *  holding the hash and a newline, or as a line "HASH NAME" of
+ *  .gitlet/packed-refs; a loose ref hides a packed one of the same name.
+ *  Creating, moving or deleting a branch touches only its loose ref, so it
+ *  costs the same however many branches there are; packRefs moves the
+ *  loose refs into packed-refs when they pile up.  Every change is made
+ *  under the lock file NAME.lock, created exclusively, and only if the
+ *  branch still has the value the caller expects, so two commands can
+ *  never both move a branch from the same commit.  packRefs takes the
+ *  lock of each loose ref it packs as well, skipping those another
+ *  command holds.  Names are checked before any path is made of them,
+ *  so no branch can name a file outside refs or a lock file.
+ *  @author Jenna Jang
+ */
+class RefStore {
+
+    /** Suffix of lock files. */
+    private static final String LOCK = ".lock";
+
+    /** The refs of the repository kept in GITLETDIR. */
+    RefStore(File gitletDir) {
+        _Refs = Utils.join(gitletDir, "refs");
+        _Packed = Utils.join(gitletDir, "packed-refs");
+    }
+
+    /** Returns true iff the repository keeps its refs this way: it has a
+     *  packed-refs file, if only an empty one. */
+    boolean exists() {
+        return _Packed.isFile();
+    }
+
+    /** Creates an empty packed-refs file, marking the refs as kept by
+     *  this store. */
+    void create() {
+        if (!exists()) {
+            Utils.writeContents(_Packed, "");
+        }
+        _Refs.mkdirs();
+    }
+
+    /** Returns true iff NAME may name a branch: it is not empty or
+     *  absolute, it has no empty, "." or ".." component and none ending
+     *  in .lock, and it holds no NUL, other control character or
+     *  backslash.
+     * @param name */
+    static boolean valid(String name) {
+        if (name == null || name.isEmpty() || new File(name).isAbsolute()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            if (c < ' ' || c == 0x7f || c == '\\') {
+                return false;
+            }
+        }
+        for (String part : name.split("/", -1)) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..")
+                    || part.endsWith(LOCK)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the hash of the head of branch NAME, or null if there is no
+     *  such branch or NAME is not valid.
+     * @param name */
+    String get(String name) {
+        if (!valid(name)) {
+            return null;
+        }
+        File loose = loose(name);
+        if (loose.isFile()) {
+            return Utils.readContentsAsString(loose).trim();
+        }
+        return packed().get(name);
+    }
+
+    /** Returns the names of every branch, in order. */
+    TreeSet<String> names() {
+        TreeSet<String> result = new TreeSet<String>(packed().keySet());
+        collect(_Refs, "", result);
+        return result;
+    }
+
+    /** Adds the names of the loose refs in DIR, prefixed by PREFIX, to
+     *  RESULT. */
+    private static void collect(File dir, String prefix,
+                                TreeSet<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collect(file, prefix + file.getName() + "/", result);
+            } else if (!file.getName().endsWith(LOCK)) {
+                result.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /** Sets branch NAME to HASH, or deletes it if HASH is null, provided
+     *  it is still EXPECTED (null meaning the branch must not exist).
+     *  Returns false, changing nothing, if it is not or another command
+     *  holds its lock.
+     * @param name
+     * @param expected
+     * @param hash */
+    boolean update(String name, String expected, String hash) {
+        File loose = loose(name);
+        File lock = new File(loose.getPath() + LOCK);
+        loose.getParentFile().mkdirs();
+        try {
+            Files.createFile(lock.toPath());
+        } catch (FileAlreadyExistsException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            if (!loose.isFile()) {
+                _PackedRefs = null;
+            }
+            String current = get(name);
+            if (current == null ? expected != null
+                    : !current.equals(expected)) {
+                return false;
+            }
+            if (hash != null) {
+                Files.write(lock.toPath(),
+                        (hash + "\n").getBytes(StandardCharsets.UTF_8));
+                Files.move(lock.toPath(), loose.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                if (packed().containsKey(name) && !removePacked(name)) {
+                    return false;
+                }
+                loose.delete();
+            }
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Moves every loose ref into packed-refs, holding the lock of each,
+     *  so that none is moved while it is being changed; a ref another
+     *  command holds the lock of is left loose.  Returns the number
+     *  moved, or -1 if another command holds the lock of packed-refs. */
+    int packRefs() {
+        File lock = new File(_Packed.getPath() + LOCK);
+        try {
+            Files.createFile(lock.toPath());
+        } catch (FileAlreadyExistsException excp) {
+            return -1;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        TreeSet<String> names = new TreeSet<String>();
+        collect(_Refs, "", names);
+        ArrayList<File> locks = new ArrayList<File>();
+        try {
+            _PackedRefs = null;
+            HashMap<String, String> all =
+                new HashMap<String, String>(packed());
+            ArrayList<String> moved = new ArrayList<String>();
+            for (String name : names) {
+                if (!valid(name)) {
+                    continue;
+                }
+                File refLock = new File(loose(name).getPath() + LOCK);
+                try {
+                    Files.createFile(refLock.toPath());
+                } catch (IOException excp) {
+                    continue;
+                }
+                locks.add(refLock);
+                File file = loose(name);
+                if (file.isFile()) {
+                    all.put(name, Utils.readContentsAsString(file).trim());
+                    moved.add(name);
+                }
+            }
+            writePacked(all, lock);
+            for (String name : moved) {
+                loose(name).delete();
+            }
+            return moved.size();
+        } finally {
+            for (File refLock : locks) {
+                refLock.delete();
+            }
+            lock.delete();
+        }
+    }
+
+    /** Rewrites packed-refs without NAME, under its lock.  Returns false,
+     *  changing nothing, if another command holds that lock. */
+    private boolean removePacked(String name) throws IOException {
+        File lock = new File(_Packed.getPath() + LOCK);
+        try {
+            Files.createFile(lock.toPath());
+        } catch (FileAlreadyExistsException excp) {
+            return false;
+        }
+        try {
+            _PackedRefs = null;
+            HashMap<String, String> all =
+                new HashMap<String, String>(packed());
+            all.remove(name);
+            writePacked(all, lock);
+            return true;
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Writes ALL as packed-refs, through the file LOCK. */
+    private void writePacked(Map<String, String> all, File lock) {
+        StringBuilder text = new StringBuilder();
+        for (String name : new TreeSet<String>(all.keySet())) {
+            text.append(all.get(name)).append(' ').append(name)
+                .append('\n');
+        }
+        try {
+            Files.write(lock.toPath(),
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(lock.toPath(), _Packed.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _PackedRefs = new HashMap<String, String>(all);
+    }
+
+    /** Returns the packed refs by name, read on first use. */
+    private HashMap<String, String> packed() {
+        if (_PackedRefs == null) {
+            _PackedRefs = new HashMap<String, String>();
+            if (_Packed.isFile()) {
+                for (String line
+                        : Utils.readContentsAsString(_Packed).split("\n")) {
+                    int space = line.indexOf(' ');
+                    if (space > 0) {
+                        _PackedRefs.put(line.substring(space + 1),
+                                line.substring(0, space));
+                    }
+                }
+            }
+        }
+        return _PackedRefs;
+    }
+
+    /** Returns the loose ref file of branch NAME, which must be valid.
+     * @param name */
+    private File loose(String name) {
+        if (!valid(name)) {
+            throw new IllegalArgumentException("invalid ref name: " + name);
+        }
+        return new File(_Refs, name);
+    }
+
+    /** Directory of loose refs. */
+    private File _Refs;
+    /** The packed-refs file. */
+    private File _Packed;
+    /** Packed refs by name, or null until read. */
+    private HashMap<String, String> _PackedRefs;
+}
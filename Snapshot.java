@@ -0,0 +1,348 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/** The files of a commit, each path mapped to the hash of its blob, as a
+ *  persistent hash array mapped trie.  Each node covers five bits of the
+ *  hash of a path and holds only the slots in use, marked in a 32-bit
+ *  bitmap, so a lookup visits at most seven nodes whatever the number of
+ *  files.  A snapshot is never changed: with returns a new one that
+ *  copies only the nodes on the paths changed and shares every other node
+ *  with this one, so the snapshot of a commit costs memory in proportion
+ *  to what the commit changed, not to the files it tracks.
+ *  @author Jenna Jang
+ */
+class Snapshot {
+
+    /** The snapshot with no files. */
+    static final Snapshot EMPTY = new Snapshot(null, 0);
+
+    /** Bits of the hash used at each level. */
+    private static final int BITS = 5;
+    /** Mask of the bits used at one level. */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** A snapshot whose trie is ROOT, holding SIZE files. */
+    private Snapshot(Node root, int size) {
+        _Root = root;
+        _Size = size;
+    }
+
+    /** Returns the snapshot holding the files of PATHS, a map of paths to
+     *  blob hashes.
+     * @param paths */
+    static Snapshot of(Map<String, String> paths) {
+        return EMPTY.with(paths);
+    }
+
+    /** Returns the number of files. */
+    int size() {
+        return _Size;
+    }
+
+    /** Returns the hash of the blob at PATH, or null if there is none.
+     * @param path */
+    String get(String path) {
+        int hash = hash(path);
+        Node node = _Root;
+        for (int shift = 0; node != null; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[node.index(bit)];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.path.equals(path) ? leaf.blob : null;
+            } else if (slot instanceof Leaf[]) {
+                for (Leaf leaf : (Leaf[]) slot) {
+                    if (leaf.path.equals(path)) {
+                        return leaf.blob;
+                    }
+                }
+                return null;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    /** Returns true iff there is a file at PATH.
+     * @param path */
+    boolean contains(String path) {
+        return get(path) != null;
+    }
+
+    /** Returns this snapshot with the file at PATH set to BLOB, or removed
+     *  if BLOB is null.
+     * @param path
+     * @param blob */
+    Snapshot with(String path, String blob) {
+        int[] size = {_Size};
+        Node root = blob == null ? remove(_Root, path, hash(path), 0, size)
+            : put(_Root, new Leaf(path, blob), 0, size);
+        return root == _Root ? this : new Snapshot(root, size[0]);
+    }
+
+    /** Returns this snapshot with CHANGES made to it, each path mapped to
+     *  its new blob, or to null if the file is gone.
+     * @param changes */
+    Snapshot with(Map<String, String> changes) {
+        Snapshot result = this;
+        for (Map.Entry<String, String> i : changes.entrySet()) {
+            result = result.with(i.getKey(), i.getValue());
+        }
+        return result;
+    }
+
+    /** Calls ACTION on the path and blob of every file, in no particular
+     *  order.
+     * @param action */
+    void forEach(BiConsumer<String, String> action) {
+        forEach(_Root, action);
+    }
+
+    /** Returns the paths of every file, in order. */
+    TreeSet<String> paths() {
+        TreeSet<String> result = new TreeSet<String>();
+        forEach((path, blob) -> result.add(path));
+        return result;
+    }
+
+    /** Returns the files as a map of paths to blob hashes. */
+    HashMap<String, String> toMap() {
+        HashMap<String, String> result = new HashMap<String, String>();
+        forEach(result::put);
+        return result;
+    }
+
+    /** Calls ACTION on every file under NODE. */
+    private static void forEach(Node node, BiConsumer<String, String> action) {
+        if (node == null) {
+            return;
+        }
+        for (Object slot : node.slots) {
+            if (slot instanceof Leaf) {
+                action.accept(((Leaf) slot).path, ((Leaf) slot).blob);
+            } else if (slot instanceof Leaf[]) {
+                for (Leaf leaf : (Leaf[]) slot) {
+                    action.accept(leaf.path, leaf.blob);
+                }
+            } else {
+                forEach((Node) slot, action);
+            }
+        }
+    }
+
+    /** Returns NODE, at level SHIFT, with LEAF put in it, adding one to
+     *  SIZE[0] if its path is new.  NODE itself is returned if LEAF is
+     *  there already. */
+    private static Node put(Node node, Leaf leaf, int shift, int[] size) {
+        int bit = bit(leaf.hash, shift);
+        if (node == null) {
+            size[0] += 1;
+            return new Node(bit, new Object[] {leaf});
+        }
+        int index = node.index(bit);
+        if ((node.bitmap & bit) == 0) {
+            size[0] += 1;
+            return node.insert(index, bit, leaf);
+        }
+        Object slot = node.slots[index], replacement;
+        if (slot instanceof Leaf) {
+            Leaf old = (Leaf) slot;
+            if (old.path.equals(leaf.path)) {
+                if (old.blob.equals(leaf.blob)) {
+                    return node;
+                }
+                replacement = leaf;
+            } else {
+                size[0] += 1;
+                replacement = merge(old, leaf, shift + BITS);
+            }
+        } else if (slot instanceof Leaf[]) {
+            replacement = putCollision((Leaf[]) slot, leaf, size);
+            if (replacement == slot) {
+                return node;
+            }
+        } else {
+            replacement = put((Node) slot, leaf, shift + BITS, size);
+            if (replacement == slot) {
+                return node;
+            }
+        }
+        return node.replace(index, replacement);
+    }
+
+    /** Returns the slot holding the different leaves A and B below the
+     *  level SHIFT: a node, or an array of leaves once the hash is used
+     *  up, which happens only when their hashes are equal. */
+    private static Object merge(Leaf a, Leaf b, int shift) {
+        if (shift >= Integer.SIZE) {
+            return new Leaf[] {a, b};
+        }
+        int bitA = bit(a.hash, shift), bitB = bit(b.hash, shift);
+        if (bitA == bitB) {
+            return new Node(bitA, new Object[] {merge(a, b, shift + BITS)});
+        }
+        return new Node(bitA | bitB, Integer.compareUnsigned(bitA, bitB) < 0
+                ? new Object[] {a, b} : new Object[] {b, a});
+    }
+
+    /** Returns the leaves LEAVES, whose hashes are all that of LEAF, with
+     *  LEAF put among them, adding one to SIZE[0] if its path is new. */
+    private static Leaf[] putCollision(Leaf[] leaves, Leaf leaf, int[] size) {
+        for (int i = 0; i < leaves.length; i += 1) {
+            if (leaves[i].path.equals(leaf.path)) {
+                if (leaves[i].blob.equals(leaf.blob)) {
+                    return leaves;
+                }
+                Leaf[] result = leaves.clone();
+                result[i] = leaf;
+                return result;
+            }
+        }
+        size[0] += 1;
+        Leaf[] result = Arrays.copyOf(leaves, leaves.length + 1);
+        result[leaves.length] = leaf;
+        return result;
+    }
+
+    /** Returns NODE, at level SHIFT, without the file PATH whose hash is
+     *  HASH, taking one from SIZE[0] if it was there, or null if nothing
+     *  is left. */
+    private static Node remove(Node node, String path, int hash, int shift,
+                               int[] size) {
+        if (node == null) {
+            return null;
+        }
+        int bit = bit(hash, shift);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int index = node.index(bit);
+        Object slot = node.slots[index], replacement;
+        if (slot instanceof Leaf) {
+            if (!((Leaf) slot).path.equals(path)) {
+                return node;
+            }
+            size[0] -= 1;
+            return node.delete(index, bit);
+        } else if (slot instanceof Leaf[]) {
+            Leaf[] leaves = (Leaf[]) slot;
+            int at = 0;
+            while (at < leaves.length && !leaves[at].path.equals(path)) {
+                at += 1;
+            }
+            if (at == leaves.length) {
+                return node;
+            }
+            size[0] -= 1;
+            if (leaves.length == 2) {
+                replacement = leaves[1 - at];
+            } else {
+                Leaf[] rest = new Leaf[leaves.length - 1];
+                System.arraycopy(leaves, 0, rest, 0, at);
+                System.arraycopy(leaves, at + 1, rest, at, rest.length - at);
+                replacement = rest;
+            }
+        } else {
+            Node child = remove((Node) slot, path, hash, shift + BITS, size);
+            if (child == slot) {
+                return node;
+            } else if (child == null) {
+                return node.delete(index, bit);
+            }
+            replacement = child.slots.length == 1
+                && child.slots[0] instanceof Leaf ? child.slots[0] : child;
+        }
+        return node.replace(index, replacement);
+    }
+
+    /** Returns the hash of PATH used to place it in the trie. */
+    private static int hash(String path) {
+        int h = path.hashCode();
+        return h ^ (h >>> 16) * 0x45d9f3b;
+    }
+
+    /** Returns the bit of the bitmap for HASH at level SHIFT. */
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /** One file: its path, the hash of the path and the blob hash. */
+    private static final class Leaf {
+        /** The file PATH, holding the blob BLOB. */
+        Leaf(String path, String blob) {
+            this.path = path;
+            this.hash = Snapshot.hash(path);
+            this.blob = blob;
+        }
+
+        /** Path of the file. */
+        final String path;
+        /** Hash of the path. */
+        final int hash;
+        /** Hash of the blob. */
+        final String blob;
+    }
+
+    /** A node of the trie: a leaf, an array of leaves with equal hashes, or
+     *  a node for each bit set in its bitmap, in order of the bits. */
+    private static final class Node {
+        /** A node holding SLOTS for the bits of BITMAP. */
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /** Returns the index in slots of the slot for BIT. */
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /** Returns a copy of this node with SLOT added for BIT at INDEX. */
+        Node insert(int index, int bit, Object slot) {
+            Object[] result = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, result, 0, index);
+            result[index] = slot;
+            System.arraycopy(slots, index, result, index + 1,
+                    slots.length - index);
+            return new Node(bitmap | bit, result);
+        }
+
+        /** Returns a copy of this node with the slot at INDEX set to SLOT. */
+        Node replace(int index, Object slot) {
+            Object[] result = slots.clone();
+            result[index] = slot;
+            return new Node(bitmap, result);
+        }
+
+        /** Returns a copy of this node without the slot for BIT at INDEX,
+         *  or null if it was the only one. */
+        Node delete(int index, int bit) {
+            if (slots.length == 1) {
+                return null;
+            }
+            Object[] result = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, result, 0, index);
+            System.arraycopy(slots, index + 1, result, index,
+                    result.length - index);
+            return new Node(bitmap & ~bit, result);
+        }
+
+        /** Bits of the slots in use. */
+        final int bitmap;
+        /** The slots in use. */
+        final Object[] slots;
+    }
+
+    /** Root of the trie, or null if there are no files. */
+    private final Node _Root;
+    /** Number of files. */
+    private final int _Size;
+}
@@ -9,6 +9,15 @@ import java.util.HashMap;
  */
 public class Stage implements Serializable {
 
+    /** Kept fixed so stages written before the encoding can still be
+     *  read. */
+    private static final long serialVersionUID = -2341696344304413301L;
+
+    /** Kind of encoding of a stage (see Binary.java). */
+    private static final String FORMAT = "GLST";
+    /** Latest version of the encoding of a stage. */
+    private static final int VERSION = 1;
+
     /** Addition List. */
     private HashMap<String, Blob> _Addition;
 
@@ -56,4 +65,31 @@ public class Stage implements Serializable {
             _Addition.replace(fileName, change);
         }
     }
+
+    /** Returns my encoding: the path and blob hash of each addition, then
+     *  of each removal, each list preceded by its length. */
+    byte[] encode() {
+        return new Binary.Writer(FORMAT, VERSION)
+            .hashes(WriteAheadLog.hashes(_Addition))
+            .hashes(WriteAheadLog.hashes(_Removal)).toByteArray();
+    }
+
+    /** Returns the stage encoded in DATA, or serialized in it if it was
+     *  written before the encoding, its blobs read from STORE.
+     * @param data
+     * @param store */
+    static Stage decode(byte[] data, ObjectStore store) {
+        if (Binary.serialized(data)) {
+            return Binary.deserialize(data, Stage.class);
+        }
+        Binary.Reader in = new Binary.Reader(data, FORMAT, VERSION);
+        Stage result = new Stage();
+        for (long n = in.varint(); n > 0; n -= 1) {
+            result.add(in.string(), new Blob(in.hash(), store));
+        }
+        for (long n = in.varint(); n > 0; n -= 1) {
+            result.remove(in.string(), new Blob(in.hash(), store));
+        }
+        return result;
+    }
 }
@@ -0,0 +1,269 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A directory of a commit: its files and subdirectories by name, each
+ *  naming the blob or tree it holds.  A tree is kept in the object store
+ *  under the hash of its bytes, MAGIC, the number of entries, then for each
+ *  entry in name order its kind, its name and the 20 bytes of its hash, so
+ *  two commits whose directories hold the same files share one tree, and
+ *  so do their ancestors up to the first directory that differs.  Building
+ *  a tree from a base writes only the directories on the changed paths, and
+ *  diff never looks inside a subtree both sides share.
+ *  @author Jenna Jang
+ */
+class Tree {
+
+    /** First bytes of a tree object. */
+    private static final int MAGIC = 0x54524545;
+    /** Kinds of entry. */
+    private static final byte BLOB = 'b', TREE = 't';
+
+    /** Receives the paths that differ between two trees. */
+    interface Change {
+        /** Called for PATH, whose blob was BEFORE and is AFTER, either of
+         *  which is null where there is no such file. */
+        void changed(String path, String before, String after);
+    }
+
+    /** Returns the tree HASH read from STORE, or an empty tree if HASH is
+     *  null.
+     * @param store
+     * @param hash */
+    static Tree read(ObjectStore store, String hash) {
+        if (hash == null) {
+            return new Tree();
+        }
+        Tree tree = new Tree();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(store.get(hash)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("not a tree: " + hash);
+            }
+            byte[] id = new byte[CommitGraph.HASH_BYTES];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                byte kind = in.readByte();
+                String name = in.readUTF();
+                in.readFully(id);
+                tree._Entries.put(name, new Entry(kind, Utils.toHex(id)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return tree;
+    }
+
+    /** Stores this tree in STORE unless it is there and returns its hash.
+     * @param store */
+    String write(ObjectStore store) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(_Entries.size());
+            for (Map.Entry<String, Entry> i : _Entries.entrySet()) {
+                out.writeByte(i.getValue().kind);
+                out.writeUTF(i.getKey());
+                out.write(Utils.fromHex(i.getValue().hash));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] contents = bytes.toByteArray();
+        String hash = Utils.sha1(contents);
+        store.put(hash, contents);
+        return hash;
+    }
+
+    /** Returns the hash of the tree BASE (none if null) with CHANGES made
+     *  to it, where CHANGES maps each path to its new blob, or to null if
+     *  the file is gone.  Directories left empty are dropped, and only the
+     *  trees on the changed paths are written.
+     * @param store
+     * @param base
+     * @param changes */
+    static String build(ObjectStore store, String base,
+                        Map<String, String> changes) {
+        return apply(store, base, changes).write(store);
+    }
+
+    /** Returns the tree BASE with CHANGES made to it, writing any subtrees
+     *  that change to STORE. */
+    private static Tree apply(ObjectStore store, String base,
+                              Map<String, String> changes) {
+        Tree tree = store.getTree(base).copy();
+        TreeMap<String, Map<String, String>> dirs =
+            new TreeMap<String, Map<String, String>>();
+        for (Map.Entry<String, String> i : changes.entrySet()) {
+            String path = i.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                dirs.computeIfAbsent(path.substring(0, slash),
+                    k -> new HashMap<String, String>())
+                    .put(path.substring(slash + 1), i.getValue());
+            } else if (i.getValue() == null) {
+                tree._Entries.remove(path);
+            } else {
+                tree._Entries.put(path, new Entry(BLOB, i.getValue()));
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> i : dirs.entrySet()) {
+            Entry old = tree._Entries.get(i.getKey());
+            Tree sub = apply(store, old != null && old.kind == TREE
+                    ? old.hash : null, i.getValue());
+            if (sub._Entries.isEmpty()) {
+                tree._Entries.remove(i.getKey());
+            } else {
+                tree._Entries.put(i.getKey(),
+                        new Entry(TREE, sub.write(store)));
+            }
+        }
+        return tree;
+    }
+
+    /** Returns the blob at PATH under the tree ROOT, or null if there is no
+     *  such file.  Only the trees on PATH are read.
+     * @param store
+     * @param root
+     * @param path */
+    static String lookup(ObjectStore store, String root, String path) {
+        String hash = root;
+        int start = 0;
+        while (hash != null) {
+            int slash = path.indexOf('/', start);
+            String name = path.substring(start,
+                    slash < 0 ? path.length() : slash);
+            Entry entry = store.getTree(hash)._Entries.get(name);
+            if (entry == null) {
+                return null;
+            } else if (slash < 0) {
+                return entry.kind == BLOB ? entry.hash : null;
+            } else if (entry.kind != TREE) {
+                return null;
+            }
+            hash = entry.hash;
+            start = slash + 1;
+        }
+        return null;
+    }
+
+    /** Adds every file under the tree ROOT to RESULT, by its path after
+     *  PREFIX.
+     * @param store
+     * @param root
+     * @param prefix
+     * @param result */
+    static void flatten(ObjectStore store, String root, String prefix,
+                        Map<String, String> result) {
+        for (Map.Entry<String, Entry> i
+                 : store.getTree(root)._Entries.entrySet()) {
+            Entry entry = i.getValue();
+            if (entry.kind == TREE) {
+                flatten(store, entry.hash, prefix + i.getKey() + "/", result);
+            } else {
+                result.put(prefix + i.getKey(), entry.hash);
+            }
+        }
+    }
+
+    /** Reports to CHANGE every file, by its path after PREFIX, that differs
+     *  between the trees A and B, either of which may be null.  Subtrees
+     *  with the same hash on both sides are skipped unread.
+     * @param store
+     * @param a
+     * @param b
+     * @param prefix
+     * @param change */
+    static void diff(ObjectStore store, String a, String b, String prefix,
+                     Change change) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        TreeMap<String, Entry> x = store.getTree(a)._Entries,
+            y = store.getTree(b)._Entries;
+        TreeSet<String> names = new TreeSet<String>(x.keySet());
+        names.addAll(y.keySet());
+        for (String name : names) {
+            Entry ex = x.get(name), ey = y.get(name);
+            if (ex != null && ex.equals(ey)) {
+                continue;
+            }
+            String path = prefix + name;
+            String ta = hashOf(ex, TREE), tb = hashOf(ey, TREE);
+            if (ta != null || tb != null) {
+                diff(store, ta, tb, path + "/", change);
+            }
+            String ba = hashOf(ex, BLOB), bb = hashOf(ey, BLOB);
+            if (ba != null || bb != null) {
+                change.changed(path, ba, bb);
+            }
+        }
+    }
+
+    /** Copies the tree HASH and everything under it from the store FROM to
+     *  the store TO, skipping any subtree TO already has.  Children are
+     *  copied before their parents, so a tree TO holds is always whole.
+     * @param from
+     * @param to
+     * @param hash */
+    static void copy(ObjectStore from, ObjectStore to, String hash) {
+        if (to.contains(hash)) {
+            return;
+        }
+        for (Entry entry : from.getTree(hash)._Entries.values()) {
+            if (entry.kind == TREE) {
+                copy(from, to, entry.hash);
+            } else {
+                to.copyFrom(from, entry.hash);
+            }
+        }
+        to.copyFrom(from, hash);
+    }
+
+    /** Returns the hash of ENTRY if it is of kind KIND, and null otherwise. */
+    private static String hashOf(Entry entry, byte kind) {
+        return entry != null && entry.kind == kind ? entry.hash : null;
+    }
+
+    /** Returns a copy of this tree that can be changed. */
+    private Tree copy() {
+        Tree result = new Tree();
+        result._Entries.putAll(_Entries);
+        return result;
+    }
+
+    /** One file or subdirectory of a tree. */
+    private static class Entry {
+        /** An entry of kind KIND holding the object HASH. */
+        Entry(byte kind, String hash) {
+            this.kind = kind;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && ((Entry) obj).kind == kind
+                && ((Entry) obj).hash.equals(hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode() + kind;
+        }
+
+        /** BLOB or TREE. */
+        final byte kind;
+        /** Hash of the blob or tree. */
+        final String hash;
+    }
+
+    /** Entries by name, in order. */
+    private TreeMap<String, Entry> _Entries = new TreeMap<String, Entry>();
+}
@@ -1,5 +1,21 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
 import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -21,6 +37,646 @@ public class UnitTest {
 
     }
 
-}
+    /** Every codec gives back exactly the bytes it was given. */
+    @Test
+    public void codecRoundTripTest() throws IOException {
+        Random random = new Random(3);
+        byte[] data = new byte[3 * LzCodec.BLOCK_SIZE + 17];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i % 700 < 350 ? random.nextInt(4) : i);
+        }
+        for (Codec codec : Codec.all()) {
+            ByteArrayOutputStream packed = new ByteArrayOutputStream();
+            try (OutputStream out = codec.compress(packed)) {
+                out.write(data, 0, 5);
+                out.write(data, 5, data.length - 5);
+            }
+            InputStream in = codec.decompress(
+                    new ByteArrayInputStream(packed.toByteArray()));
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    /** A snapshot agrees with a HashMap given the same changes, including
+     *  paths whose hash codes are equal ("Aa" and "BB"), and changing it
+     *  leaves the snapshots it came from as they were. */
+    @Test
+    public void snapshotTest() {
+        Random random = new Random(5);
+        HashMap<String, String> expected = new HashMap<String, String>();
+        Snapshot files = Snapshot.EMPTY, before = files;
+        HashMap<String, String> beforeMap = null;
+        for (int i = 0; i < 20000; i += 1) {
+            String path = random.nextBoolean() ? "d/" + random.nextInt(3000)
+                : (random.nextBoolean() ? "Aa" : "BB")
+                + (random.nextBoolean() ? "Aa" : "BB") + random.nextInt(2);
+            String blob = random.nextInt(3) == 0 ? null
+                : Integer.toString(random.nextInt(5));
+            if (i == 10000) {
+                before = files;
+                beforeMap = new HashMap<String, String>(expected);
+            }
+            files = files.with(path, blob);
+            if (blob == null) {
+                expected.remove(path);
+            } else {
+                expected.put(path, blob);
+            }
+            assertEquals(expected.get(path), files.get(path));
+        }
+        assertEquals(expected, files.toMap());
+        assertEquals(expected.size(), files.size());
+        assertEquals(beforeMap, before.toMap());
+    }
+
+    /** Myers' algorithm finds common subsequences as long as those of the
+     *  LCS table, made of runs that really are common and in order, and
+     *  gives up when the edit limit is passed. */
+    @Test
+    public void myersDiffTest() {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i += 1) {
+            ArrayList<String> a = new ArrayList<String>(),
+                b = new ArrayList<String>();
+            for (int n = random.nextInt(40); n > 0; n -= 1) {
+                a.add(Integer.toString(random.nextInt(4)));
+            }
+            for (int n = random.nextInt(40); n > 0; n -= 1) {
+                b.add(Integer.toString(random.nextInt(4)));
+            }
+            Diff lcs = new Diff(), myers = new Diff(Diff.Algorithm.MYERS);
+            lcs.setSequences(a, b);
+            myers.setSequences(a, b);
+            int length = lcs.lls();
+            assertEquals(length, myers.lls());
+            int[] runs = myers.commonSubsequence();
+            int total = 0, x = 0, y = 0;
+            for (int k = 0; k < runs.length; k += 3) {
+                assertTrue(runs[k] >= x && runs[k + 1] >= y);
+                for (int j = 0; j < runs[k + 2]; j += 1) {
+                    assertEquals(a.get(runs[k] + j), b.get(runs[k + 1] + j));
+                }
+                x = runs[k] + runs[k + 2];
+                y = runs[k + 1] + runs[k + 2];
+                total += runs[k + 2];
+            }
+            assertEquals(length, total);
+            int edits = a.size() + b.size() - 2 * length;
+            myers.setEditLimit(edits);
+            assertNotNull(myers.diffs());
+            if (edits > 0) {
+                myers.setEditLimit(edits - 1);
+                assertNull(myers.diffs());
+            }
+        }
+    }
+
+    /** A three-way merge takes each side's changes where they do not
+     *  overlap and puts markers only around the lines both changed. */
+    @Test
+    public void merge3Test() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        assertEquals("A\nb\nc\nd\nE\n",
+                merge3(base, "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n", 0));
+        assertEquals("a\nb\nd\ne\nf\n",
+                merge3(base, "a\nb\nd\ne\n", "a\nb\nc\nd\ne\nf\n", 0));
+        assertEquals("a\n<<<<<<< HEAD\nX\n=======\nY\n>>>>>>>\nc\nd\nE\n",
+                merge3(base, "a\nX\nc\nd\ne\n", "a\nY\nc\nd\nE\n", 1));
+        assertEquals("a\nX\nc\n",
+                merge3("a\nb\nc\n", "a\nX\nc\n", "a\nX\nc\n", 0));
+        assertEquals("<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\n",
+                merge3("", "x\n", "y", 1));
+    }
+
+    /** Returns the three-way merge of OURS and THEIRS from BASE, checking
+     *  that it has CONFLICTS conflicts. */
+    private static String merge3(String base, String ours, String theirs,
+                                 int conflicts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(conflicts, Merge3.merge(
+                base.getBytes(StandardCharsets.UTF_8),
+                ours.getBytes(StandardCharsets.UTF_8),
+                theirs.getBytes(StandardCharsets.UTF_8), out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** The stage is the checkpoint with every whole batch of the log
+     *  replayed over it; a torn batch is dropped, and the ref moves of the
+     *  last batch are made if they were not. */
+    @Test
+    public void writeAheadLogTest() throws IOException {
+        File dir = Files.createTempDirectory("wal").toFile();
+        ObjectStore store = new ObjectStore(dir, new Config(dir));
+        RefStore refs = new RefStore(dir);
+        refs.create();
+        Utils.writeContents(new File(dir, "HEAD"), "master");
+        WriteAheadLog log = new WriteAheadLog(dir, false);
+        HashMap<String, String> none = new HashMap<String, String>(),
+            one = new HashMap<String, String>();
+        one.put("a.txt", "11");
+        log.checkpoint(new Stage());
+        WriteAheadLog.Batch batch = new WriteAheadLog.Batch();
+        batch.stage(none, none, one, none);
+        batch.ref("master", null, "22");
+        log.append(batch);
+        batch = new WriteAheadLog.Batch();
+        batch.stage(one, none, none, one);
+        log.append(batch);
+        File wal = new File(dir, "wal");
+        long whole = wal.length();
+        Files.write(wal.toPath(), new byte[] { 0, 0, 0, 9, 'x' },
+                StandardOpenOption.APPEND);
+        Stage stage = new WriteAheadLog(dir, false).recover(store, refs);
+        assertTrue(stage.rtAddition().isEmpty());
+        assertEquals("11", stage.rtRemoval().get("a.txt").hash());
+        assertEquals(whole, wal.length());
+        assertNull(refs.get("master"));
+        batch = new WriteAheadLog.Batch();
+        batch.ref("master", null, "22");
+        log.append(batch);
+        new WriteAheadLog(dir, false).recover(store, refs);
+        assertEquals("22", refs.get("master"));
+    }
+
+    /** A ref moves only from the value it is expected to have and only
+     *  while no other command holds its lock; packRefs leaves a locked
+     *  ref loose; names that would reach outside refs or onto a lock file
+     *  are refused before any file is touched. */
+    @Test
+    public void refStoreTest() throws IOException {
+        File dir = Files.createTempDirectory("refs").toFile();
+        RefStore refs = new RefStore(dir);
+        refs.create();
+        assertTrue(refs.update("master", null, "11"));
+        assertFalse(refs.update("master", null, "22"));
+        assertFalse(refs.update("master", "33", "22"));
+        assertTrue(refs.update("master", "11", "22"));
+        assertTrue(refs.update("topic/a", null, "44"));
+        File lock = new File(dir, "refs/master.lock");
+        assertTrue(lock.createNewFile());
+        assertFalse(refs.update("master", "22", "55"));
+        assertEquals(1, refs.packRefs());
+        assertTrue(new File(dir, "refs/master").isFile());
+        assertFalse(new File(dir, "refs/topic/a").exists());
+        assertTrue(lock.delete());
+        assertEquals("44", new RefStore(dir).get("topic/a"));
+        assertEquals(1, refs.packRefs());
+        assertEquals("22", new RefStore(dir).get("master"));
+        File packedLock = new File(dir, "packed-refs.lock");
+        assertTrue(packedLock.createNewFile());
+        assertFalse(refs.update("master", "22", null));
+        assertEquals(-1, refs.packRefs());
+        assertTrue(packedLock.delete());
+        assertTrue(refs.update("master", "22", null));
+        assertNull(new RefStore(dir).get("master"));
+        assertTrue(new File(dir, "HEAD").createNewFile());
+        for (String name : new String[] { "", "../HEAD", "../../new.txt",
+                "/tmp/x", "a/../b", "a//b", "a/", ".", "x.lock",
+                "x.lock/y", "a\u0000b", "a\nb", "a\\b" }) {
+            assertFalse(name, RefStore.valid(name));
+            assertNull(refs.get(name));
+            try {
+                refs.update(name, null, "11");
+                fail(name);
+            } catch (IllegalArgumentException excp) {
+                assertTrue(excp.getMessage().startsWith("invalid ref name"));
+            }
+        }
+        assertTrue(RefStore.valid("master@origin"));
+        assertTrue(new File(dir, "HEAD").exists());
+        assertFalse(new File(dir.getParentFile(), "new.txt").exists());
+    }
+
+    /** Commits, stages and numbers read back from the binary encoding as
+     *  they were written, and serialized ones are still read. */
+    @Test
+    public void binaryFormatTest() {
+        Commit parent = new Commit("initial commit", null);
+        Commit commit = new Commit(parent);
+        commit.setMessage("caf\u00e9 \u2603");
+        commit.setParent(parent);
+        commit.setHash("x");
+        for (byte[] data : new byte[][] { commit.encode(),
+                                          Utils.serialize(commit) }) {
+            Commit read = Commit.decode(data);
+            assertEquals(commit.getHash(), read.getHash());
+            assertEquals(parent.getHash(), read.getParentHash());
+            assertEquals(commit.getMessage(), read.getMessage());
+            assertEquals(commit.getTimestamp(), read.getTimestamp());
+        }
+        assertNull(Commit.decode(parent.encode()).getParentHash());
+        Stage stage = new Stage();
+        stage.add("a/b.txt", new Blob(Utils.sha1("b"), null));
+        stage.remove("c.txt", new Blob(Utils.sha1("c"), null));
+        Stage read = Stage.decode(stage.encode(), null);
+        assertEquals(Utils.sha1("b"), read.rtAddition().get("a/b.txt").hash());
+        assertEquals(Utils.sha1("c"), read.rtRemoval().get("c.txt").hash());
+        long[] numbers = { 0, 127, 128, 300, 1L << 35, Long.MAX_VALUE, -1 };
+        Binary.Writer out = new Binary.Writer("TEST", 2);
+        for (long n : numbers) {
+            out.varint(n);
+        }
+        Binary.Reader in = new Binary.Reader(out.toByteArray(), "TEST", 2);
+        assertEquals(2, in.version());
+        for (long n : numbers) {
+            assertEquals(n, in.varint());
+        }
+    }
+
+    /** Two commits of the same message made in the same second get
+     *  different ids, and each is stored with the right parent. */
+    @Test
+    public void sameMessageCommitTest() throws IOException {
+        File dir = Files.createTempDirectory("commits").toFile();
+        String cwd = System.getProperty("user.dir");
+        System.setProperty("user.dir", dir.getPath());
+        try {
+            Methods repo = new Methods("init");
+            Utils.writeContents(new File(dir, "a.txt"), "a");
+            repo.add("add", "a.txt");
+            repo.commit("update");
+            Utils.writeContents(new File(dir, "b.txt"), "b");
+            repo.add("add", "b.txt");
+            repo.commit("update");
+            repo.save();
+            Commit second = Methods.load(new File(dir, ".gitlet"))
+                .whereBranch("master").head();
+            Commit first = second.getParent();
+            assertFalse(first.getHash().equals(second.getHash()));
+            assertEquals("update", first.getMessage());
+            assertNotNull(second.whereBlob("b.txt"));
+            assertNull(first.whereBlob("b.txt"));
+            assertEquals("initial commit",
+                    first.getParent().getMessage());
+        } finally {
+            System.setProperty("user.dir", cwd);
+        }
+    }
+
+    /** A save that finds a ref locked fails, and the ref is not moved
+     *  when the repository is next read, even if the stage did not
+     *  change. */
+    @Test
+    public void failedSaveTest() throws IOException {
+        File dir = Files.createTempDirectory("save").toFile();
+        String cwd = System.getProperty("user.dir");
+        System.setProperty("user.dir", dir.getPath());
+        try {
+            Methods repo = new Methods("init");
+            repo.save();
+            File gitlet = new File(dir, ".gitlet");
+            String initial = new RefStore(gitlet).get("master");
+            repo = Methods.load(gitlet);
+            Utils.writeContents(new File(dir, "a.txt"), "a");
+            repo.add("add", "a.txt");
+            repo.commit("first");
+            File lock = new File(gitlet, "refs/master.lock");
+            assertTrue(lock.createNewFile());
+            try {
+                repo.save();
+                fail();
+            } catch (GitletException excp) {
+                assertTrue(excp.getMessage().startsWith("Branch master"));
+            }
+            assertTrue(lock.delete());
+            Methods.load(gitlet);
+            assertEquals(initial, new RefStore(gitlet).get("master"));
+        } finally {
+            System.setProperty("user.dir", cwd);
+        }
+    }
+
+    /** The merge base of two commits is found by stepping back the one of
+     *  higher generation, and an ancestor only of a commit of higher
+     *  generation, both before and after the graph is written. */
+    @Test
+    public void commitGraphTest() throws IOException {
+        File file = new File(Files.createTempDirectory("graph").toFile(),
+                "commit-graph");
+        CommitGraph graph = new CommitGraph(file);
+        assertTrue(graph.missing());
+        String r = Utils.sha1("r"), a1 = Utils.sha1("a1"),
+            a2 = Utils.sha1("a2"), a3 = Utils.sha1("a3"),
+            b1 = Utils.sha1("b1"), c1 = Utils.sha1("c1"),
+            c2 = Utils.sha1("c2"), d = Utils.sha1("d");
+        graph.add(r, null);
+        graph.add(a1, r);
+        graph.add(a2, a1);
+        graph.add(a3, a2);
+        graph.add(b1, r);
+        graph.add(c1, a2);
+        graph.add(c2, c1);
+        for (int pass = 0; pass < 2; pass += 1) {
+            assertEquals(7, graph.size());
+            assertEquals(5, graph.generation(graph.position(c2)));
+            assertEquals(a2, graph.mergeBase(a3, c2));
+            assertEquals(a2, graph.mergeBase(c2, a3));
+            assertEquals(r, graph.mergeBase(b1, c2));
+            assertEquals(a1, graph.mergeBase(a1, a3));
+            assertEquals(c2, graph.mergeBase(c2, c2));
+            assertNull(graph.mergeBase(a3, d));
+            assertTrue(graph.isAncestor(r, c2));
+            assertTrue(graph.isAncestor(a2, c2));
+            assertTrue(graph.isAncestor(c2, c2));
+            assertFalse(graph.isAncestor(a3, c2));
+            assertFalse(graph.isAncestor(c2, a2));
+            assertFalse(graph.isAncestor(b1, a3));
+            assertFalse(graph.isAncestor(d, a3));
+            graph.save();
+            graph = new CommitGraph(file);
+            assertFalse(graph.missing());
+        }
+        graph.add(d, c2);
+        assertEquals(6, graph.generation(graph.position(d)));
+        assertEquals(a2, graph.mergeBase(d, a3));
+        assertTrue(graph.isAncestor(a1, d));
+        assertFalse(graph.isAncestor(b1, d));
+        try {
+            graph.add(Utils.sha1("e"), Utils.sha1("f"));
+            fail();
+        } catch (IllegalArgumentException excp) {
+            assertEquals("parent not in graph", excp.getMessage());
+        }
+    }
+
+    /** A prefix of any length finds the commits whose ids start with it,
+     *  up to a limit, whether the commits are in the written graph or added
+     *  since; the fan-out table's first and last bytes included. */
+    @Test
+    public void prefixLookupTest() throws IOException {
+        File file = new File(Files.createTempDirectory("prefix").toFile(),
+                "commit-graph");
+        CommitGraph graph = new CommitGraph(file);
+        ArrayList<String> hashes = new ArrayList<String>();
+        String tail = Utils.sha1("tail").substring(4);
+        for (String head : new String[] { "0000", "00ff", "abc1", "abc2",
+                                          "ffff" }) {
+            hashes.add(head + tail);
+        }
+        for (int i = 0; i < 300; i += 1) {
+            hashes.add(Utils.sha1("commit " + i));
+        }
+        String parent = null;
+        for (String hash : hashes.subList(0, 200)) {
+            graph.add(hash, parent);
+            parent = hash;
+        }
+        graph.save();
+        graph = new CommitGraph(file);
+        for (String hash : hashes.subList(200, hashes.size())) {
+            graph.add(hash, parent);
+            parent = hash;
+        }
+        for (String hash : hashes) {
+            for (int k = 0; k <= 4; k += 1) {
+                String prefix = hash.substring(0, k);
+                int count = 0;
+                for (String other : hashes) {
+                    count += other.startsWith(prefix) ? 1 : 0;
+                }
+                List<String> found = graph.find(prefix, hashes.size());
+                assertEquals(count, found.size());
+                for (String other : found) {
+                    assertTrue(other.startsWith(prefix));
+                }
+                assertEquals(Math.min(count, 2), graph.find(prefix, 2).size());
+            }
+            assertEquals(List.of(hash), graph.find(hash, 2));
+            assertEquals(List.of(hash), graph.find(hash.toUpperCase(), 2));
+        }
+        assertEquals(2, graph.find("abc", 2).size());
+        assertEquals(List.of("abc1" + tail), graph.find("abc1", 2));
+        assertTrue(graph.find("xyz", 2).isEmpty());
+        assertTrue(graph.find(hashes.get(0) + "0", 2).isEmpty());
+    }
+
+    /** The message index answers exact, word and substring queries as a
+     *  scan of the messages would, over records it covers, later saved
+     *  ones and pending ones, and is rebuilt only once the tail passes
+     *  max(MIN_TAIL, covered / 16) records. */
+    @Test
+    public void messageIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("index").toFile();
+        File file = new File(dir, "message-index");
+        CommitJournal journal = new CommitJournal(dir, false);
+        MessageIndex index = new MessageIndex(dir, journal, true);
+        ArrayList<Commit> commits = new ArrayList<Commit>();
+        int covered = 16 * (MessageIndex.MIN_TAIL + 64);
+        int[] added = { MessageIndex.MIN_TAIL, 1, covered - 1025,
+                        covered / 16, 1, 5 };
+        int[] indexed = { 0, 1025, covered, covered, covered + 1089,
+                          covered + 1089 };
+        for (int step = 0; step < added.length; step += 1) {
+            for (int i = 0; i < added[step]; i += 1) {
+                int k = commits.size();
+                Commit commit = new Commit("Fix " + k
+                        + (k % 7 == 0 ? " seven" : "") + " Day", null);
+                commits.add(commit);
+                journal.add(commit, k);
+            }
+            journal.save();
+            index.save();
+            assertEquals(indexed[step], indexed(file));
+        }
+        for (int i = 0; i < 3; i += 1) {
+            Commit commit = new Commit("pending " + i + " seven", null);
+            commits.add(commit);
+            journal.add(commit, 0);
+        }
+        for (String text : new String[] { "ix 7 s", "ven D", "x 700", "n",
+                                          "ay", "Fix 1", "nope" }) {
+            ArrayList<String> expected = new ArrayList<String>();
+            for (Commit commit : commits) {
+                if (commit.getMessage().contains(text)) {
+                    expected.add(commit.getHash());
+                }
+            }
+            assertEquals(expected, index.substring(text));
+        }
+        ArrayList<String> sevens = new ArrayList<String>();
+        for (Commit commit : commits) {
+            if (commit.getMessage().contains(" seven")) {
+                sevens.add(commit.getHash());
+            }
+        }
+        assertEquals(sevens, index.words("SEVEN"));
+        int last = covered + 1093;
+        assertEquals(List.of(commits.get(last).getHash()),
+                index.words("day " + last + " fix"));
+        assertEquals(List.of(commits.get(7).getHash()),
+                index.exact("Fix 7 seven Day"));
+        assertEquals(List.of(commits.get(commits.size() - 1).getHash()),
+                index.exact("pending 2 seven"));
+        assertTrue(index.exact("Fix 7").isEmpty());
+    }
 
+    /** Returns the number of journal records the message index FILE
+     *  covers, or 0 if there is no such file. */
+    private static int indexed(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(8);
+            return in.readInt();
+        }
+    }
+
+    /** The journal reads back the records saved in it, in order; a torn
+     *  last record is ignored and written over by the next save, and last
+     *  and since step back from the end to the right record. */
+    @Test
+    public void commitJournalTest() throws IOException {
+        File dir = Files.createTempDirectory("journal").toFile();
+        File file = new File(dir, "journal");
+        CommitJournal journal = new CommitJournal(dir, false);
+        assertTrue(journal.missing());
+        assertEquals(0, journal.end());
+        ArrayList<String> ids = new ArrayList<String>();
+        Commit parent = null;
+        for (int i = 1; i <= 5; i += 1) {
+            Commit commit = new Commit("commit " + i, parent);
+            journal.add(commit, 100 * i);
+            ids.add(commit.getHash());
+            parent = commit;
+        }
+        assertEquals(ids, journal.ids());
+        journal.save();
+        assertTrue(journal.pending().isEmpty());
+        long whole = file.length();
+        Files.write(file.toPath(), new byte[] { 0, 0, 0, 80, 1, 2, 3 },
+                StandardOpenOption.APPEND);
+        journal = new CommitJournal(dir, false);
+        assertEquals(whole, journal.end());
+        assertEquals(ids, journal.ids());
+        assertEquals(0, journal.last(9));
+        assertEquals(whole, journal.last(0));
+        assertEquals("commit 4", journal.read(journal.last(2)).message);
+        assertEquals(ids.get(2), journal.id(journal.since(300)));
+        assertEquals(ids.get(3), journal.id(journal.since(301)));
+        assertEquals(0, journal.since(0));
+        assertEquals(whole, journal.since(501));
+        CommitJournal.Entry entry = journal.read(journal.last(1));
+        assertEquals(ids.get(3), entry.parent);
+        assertEquals(500, entry.recorded);
+        assertNull(journal.read(0).parent);
+        Commit commit = new Commit("commit 6", parent);
+        journal.add(commit, 600);
+        ids.add(commit.getHash());
+        journal.save();
+        assertEquals(file.length(), journal.end());
+        assertEquals(ids, new CommitJournal(dir, false).ids());
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(file.length() - 3);
+        }
+        journal = new CommitJournal(dir, false);
+        assertEquals(ids.subList(0, 5), journal.ids());
+        commit = new Commit("commit 7", parent);
+        journal.add(commit, 700);
+        journal.save();
+        assertEquals(file.length(), journal.end());
+        assertEquals("commit 7", journal.read(journal.last(1)).message);
+        assertEquals(6, journal.ids().size());
+    }
+
+    /** global-log -n N shows the last N commits, whether saved in the
+     *  journal or still pending, --since only those from a date on, and a
+     *  negative N is refused. */
+    @Test
+    public void globalLogTest() throws IOException {
+        File dir = Files.createTempDirectory("journal").toFile();
+        String cwd = System.getProperty("user.dir");
+        System.setProperty("user.dir", dir.getPath());
+        try {
+            Methods repo = new Methods("init");
+            for (String msg : new String[] { "a", "b" }) {
+                Utils.writeContents(new File(dir, msg + ".txt"), msg);
+                repo.add("add", msg + ".txt");
+                repo.commit(msg);
+            }
+            repo.save();
+            repo = Methods.load(new File(dir, ".gitlet"));
+            for (String msg : new String[] { "c", "d" }) {
+                Utils.writeContents(new File(dir, msg + ".txt"), msg);
+                repo.add("add", msg + ".txt");
+                repo.commit(msg);
+            }
+            assertEquals("initial commit a b c d",
+                    globalLog(repo, "global-log"));
+            assertEquals("d", globalLog(repo, "global-log", "-n", "1"));
+            assertEquals("b c d", globalLog(repo, "global-log", "-n", "3"));
+            assertEquals("", globalLog(repo, "global-log", "-n", "0"));
+            assertEquals("initial commit a b c d",
+                    globalLog(repo, "global-log", "-n", "9"));
+            assertEquals("c d", globalLog(repo, "global-log",
+                    "--since", "9999-01-01"));
+            assertEquals("initial commit a b c d", globalLog(repo,
+                    "global-log", "--since", "1970-01-02"));
+            assertEquals("d", globalLog(repo, "global-log",
+                    "--since", "1970-01-02", "-n", "1"));
+            try {
+                globalLog(repo, "global-log", "-n", "-1");
+                fail();
+            } catch (GitletException excp) {
+                assertEquals("Incorrect operands.", excp.getMessage());
+            }
+        } finally {
+            System.setProperty("user.dir", cwd);
+        }
+    }
 
+    /** Returns the messages, joined by spaces, that REPO's global-log
+     *  prints given ARGS. */
+    private static String globalLog(Methods repo, String... args)
+        throws IOException {
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true,
+                StandardCharsets.UTF_8));
+        try {
+            repo.globalLog(args);
+        } finally {
+            System.setOut(out);
+        }
+        ArrayList<String> messages = new ArrayList<String>();
+        String[] lines = printed.toString(StandardCharsets.UTF_8)
+            .split("\n");
+        for (int i = 0; i + 3 < lines.length; i += 5) {
+            messages.add(lines[i + 3]);
+        }
+        return String.join(" ", messages);
+    }
+
+    /** Batch commands split at whitespace outside quotes, with escapes in
+     *  double quotes, and are read up to a newline (less a carriage
+     *  return) or a NUL. */
+    @Test
+    public void batchSplitTest() throws IOException {
+        assertArrayEquals(new String[] { "commit", "two words" },
+                Batch.split("  commit \"two words\" "));
+        assertArrayEquals(new String[] { "commit", "say \"hi\"", "it's" },
+                Batch.split("commit 'say \"hi\"' \"it's\""));
+        assertArrayEquals(new String[] { "commit", "" },
+                Batch.split("commit \"\""));
+        assertArrayEquals(new String[] { "a\\b\"c" },
+                Batch.split("\"a\\\\b\\\"c\""));
+        assertEquals(0, Batch.split(" \t").length);
+        try {
+            Batch.split("commit \"open");
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("Unterminated quote.", excp.getMessage());
+        }
+        InputStream in = new ByteArrayInputStream(
+                "add a\r\n\nlast".getBytes(StandardCharsets.UTF_8));
+        assertEquals("add a", Batch.read(in, '\n'));
+        assertEquals("", Batch.read(in, '\n'));
+        assertEquals("last", Batch.read(in, '\n'));
+        assertNull(Batch.read(in, '\n'));
+        in = new ByteArrayInputStream(
+                "commit \"a\nb\"\0".getBytes(StandardCharsets.UTF_8));
+        assertEquals("commit \"a\nb\"", Batch.read(in, 0));
+        assertNull(Batch.read(in, 0));
+    }
+
+}
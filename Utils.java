@@ -6,6 +6,7 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -13,12 +14,16 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 
 /** Assorted utilities.
@@ -61,6 +66,57 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Size of the chunks in which files are streamed. */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /** A SHA-1 digest per thread, reused for every file it hashes. */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not "
+                                                   + "support SHA-1");
+            }
+        });
+
+    /** A streaming buffer per thread, reused for every file it reads. */
+    private static final ThreadLocal<byte[]> CHUNK =
+        ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+    /** Returns this thread's SHA-1 digest, reset and ready for use. */
+    static MessageDigest sha1Digest() {
+        MessageDigest md = SHA1_DIGEST.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns this thread's buffer of CHUNK_SIZE bytes. */
+    static byte[] chunk() {
+        return CHUNK.get();
+    }
+
+    /** Returns DIGEST as a hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = Character.forDigit((digest[i] >> 4) & 0xf, 16);
+            result[2 * i + 1] = Character.forDigit(digest[i] & 0xf, 16);
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes of the hexadecimal numeral HEX, two digits to
+     *  a byte. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) (Character.digit(hex.charAt(2 * i), 16) << 4
+                    | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -134,6 +190,28 @@ class Utils {
         }
     }
 
+    /** Writes CONTENTS to FILE through a temporary file renamed over it,
+     *  so that FILE holds either its old or its new contents whatever
+     *  happens, forcing them to disk first iff SYNC.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void writeAtomically(File file, byte[] contents, boolean sync) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(contents);
+            if (sync) {
+                out.getFD().sync();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -186,6 +264,34 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /* PARALLELISM */
+
+    /** Fewest items worth handing to a thread pool. */
+    static final int PARALLEL_THRESHOLD = 64;
+
+    /** Applies WORK to each of ITEMS, on a pool of at most THREADS threads
+     *  when there are enough items to be worth it.  WORK must be safe to
+     *  run in several threads at once; its first exception is rethrown. */
+    static <T> void forEach(List<T> items, int threads, Consumer<T> work) {
+        if (threads <= 1 || items.size() < PARALLEL_THRESHOLD) {
+            items.forEach(work);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> items.parallelStream().forEach(work)).get();
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -0,0 +1,296 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/** The changes each command makes to the stage, the refs and HEAD, logged
+ *  in .gitlet/wal before any of them is made.  The log is a run of
+ *  batches, one per command: the length of its records, the records, and
+ *  their CRC-32, so a batch cut short by a crash is recognized and cut
+ *  off.  A batch is forced to disk with one call however many records it
+ *  holds.  The stage file is the checkpoint: the stage as of the start of
+ *  the log, rewritten whole (atomically) and the log emptied once the log
+ *  passes CHECKPOINT_BYTES, so a command writes only what it changed.
+ *  Every record sets or clears one entry, so replaying the log over the
+ *  checkpoint gives the same stage however many of its batches the
+ *  checkpoint already holds.
+ *  @author Jenna Jang
+ */
+class WriteAheadLog {
+
+    /** Bytes of log past which save writes a checkpoint. */
+    static final long CHECKPOINT_BYTES = 64 * 1024;
+
+    /** Kinds of record: a file staged for addition or removal with its
+     *  blob, unstaged for addition or removal, HEAD set, a ref moved. */
+    private static final byte ADD = 'a', UNADD = 'A', REMOVE = 'r',
+        UNREMOVE = 'R', HEAD = 'h', REF = 'f';
+
+    /** The log of the repository kept in GITLETDIR, forced to disk iff
+     *  SYNC. */
+    WriteAheadLog(File gitletDir, boolean sync) {
+        _File = Utils.join(gitletDir, "wal");
+        _Checkpoint = Utils.join(gitletDir, "stage");
+        _Head = Utils.join(gitletDir, "HEAD");
+        _Sync = sync;
+        _Size = _File.length();
+    }
+
+    /** Returns the stage as the last command left it: the checkpoint with
+     *  every whole batch of the log replayed over it, its blobs read from
+     *  STORE.  The ref moves and HEAD of the last batch are made again in
+     *  REFS, each only if the ref still holds the value it was moved from,
+     *  in case its command died before making them; a torn batch at the
+     *  end of the log is cut off.
+     * @param store
+     * @param refs */
+    Stage recover(ObjectStore store, RefStore refs) {
+        Stage stage = _Checkpoint.isFile()
+            ? Stage.decode(Utils.readContents(_Checkpoint), store)
+            : new Stage();
+        if (!_File.isFile()) {
+            return stage;
+        }
+        ByteBuffer log = ByteBuffer.wrap(Utils.readContents(_File));
+        int at = 0;
+        byte[] last = null;
+        while (at + 8 <= log.limit()) {
+            int length = log.getInt(at);
+            if (length < 0 || length > log.limit() - at - 8) {
+                break;
+            }
+            byte[] body = new byte[length];
+            log.position(at + 4);
+            log.get(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != log.getInt(at + 4 + length)) {
+                break;
+            }
+            replay(body, stage, store, null);
+            last = body;
+            at += 8 + length;
+        }
+        if (at < log.limit()) {
+            truncate(at);
+        }
+        _Size = at;
+        if (last != null) {
+            replay(last, null, store, refs);
+        }
+        return stage;
+    }
+
+    /** Applies the records of BODY: the stage records to STAGE, if it is
+     *  not null, and the ref and HEAD records to REFS and the HEAD file,
+     *  if REFS is not null, blobs being read from STORE. */
+    private void replay(byte[] body, Stage stage, ObjectStore store,
+                        RefStore refs) {
+        try (DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(body))) {
+            while (in.available() > 0) {
+                byte kind = in.readByte();
+                String name = in.readUTF();
+                if (kind == REF) {
+                    String before = nullIfEmpty(in.readUTF()),
+                        after = nullIfEmpty(in.readUTF());
+                    if (refs != null && Objects.equals(refs.get(name),
+                                                       before)) {
+                        refs.update(name, before, after);
+                    }
+                } else if (kind == HEAD) {
+                    if (refs != null && !name.equals(
+                            Utils.readContentsAsString(_Head))) {
+                        Utils.writeAtomically(_Head,
+                                name.getBytes(StandardCharsets.UTF_8), _Sync);
+                    }
+                } else if (stage == null) {
+                    if (kind == ADD || kind == REMOVE) {
+                        in.readUTF();
+                    }
+                } else if (kind == ADD) {
+                    stage.add(name, new Blob(in.readUTF(), store));
+                } else if (kind == REMOVE) {
+                    stage.remove(name, new Blob(in.readUTF(), store));
+                } else if (kind == UNADD) {
+                    stage.minusFromAdd(name);
+                } else if (kind == UNREMOVE) {
+                    stage.rmFromrm(name);
+                } else {
+                    throw new IllegalArgumentException("bad wal record");
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Appends BATCH, unless it is empty, to the log as one batch and
+     *  forces it to disk.
+     * @param batch */
+    void append(Batch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        byte[] body = batch._Bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buf = ByteBuffer.allocate(body.length + 8);
+        buf.putInt(body.length).put(body).putInt((int) crc.getValue());
+        buf.flip();
+        try (FileChannel out = FileChannel.open(_File.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            if (_Sync) {
+                out.force(false);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _Size += body.length + 8;
+    }
+
+    /** Returns true iff a checkpoint is due: there is none yet, or the log
+     *  has passed CHECKPOINT_BYTES. */
+    boolean due() {
+        return !_Checkpoint.isFile() || _Size > CHECKPOINT_BYTES;
+    }
+
+    /** Writes STAGE, which must hold every batch of the log, whole as the
+     *  checkpoint and empties the log.
+     * @param stage */
+    void checkpoint(Stage stage) {
+        Utils.writeAtomically(_Checkpoint, stage.encode(), _Sync);
+        if (_Size > 0) {
+            truncate(0);
+        }
+        _Size = 0;
+    }
+
+    /** Cuts the log file down to its first SIZE bytes. */
+    private void truncate(long size) {
+        try (RandomAccessFile file = new RandomAccessFile(_File, "rw")) {
+            file.setLength(size);
+            if (_Sync) {
+                file.getChannel().force(false);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns null if S is empty, else S. */
+    private static String nullIfEmpty(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    /** Returns the hash of each blob of BLOBS, by path.
+     * @param blobs */
+    static HashMap<String, String> hashes(Map<String, Blob> blobs) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        for (Map.Entry<String, Blob> e : blobs.entrySet()) {
+            result.put(e.getKey(), e.getValue().hash());
+        }
+        return result;
+    }
+
+    /** The records of one batch, as a command builds it. */
+    static class Batch {
+
+        /** Records the changes from the stage whose additions and removals
+         *  have the blobs ADDED and REMOVED, by path, to the one with the
+         *  blobs NOWADDED and NOWREMOVED.
+         * @param added
+         * @param removed
+         * @param nowAdded
+         * @param nowRemoved */
+        void stage(Map<String, String> added, Map<String, String> removed,
+                   Map<String, String> nowAdded,
+                   Map<String, String> nowRemoved) {
+            changes(added, nowAdded, ADD, UNADD);
+            changes(removed, nowRemoved, REMOVE, UNREMOVE);
+        }
+
+        /** Records with SET every path of NOW whose blob is not the one in
+         *  BEFORE, and with CLEAR every path of BEFORE not in NOW. */
+        private void changes(Map<String, String> before,
+                             Map<String, String> now, byte set, byte clear) {
+            for (Map.Entry<String, String> e : now.entrySet()) {
+                String hash = e.getValue();
+                if (!hash.equals(before.get(e.getKey()))) {
+                    record(set, e.getKey(), hash);
+                }
+            }
+            for (String path : before.keySet()) {
+                if (!now.containsKey(path)) {
+                    record(clear, path);
+                }
+            }
+        }
+
+        /** Records that the ref NAME moves from BEFORE to AFTER, either
+         *  null for no ref.
+         * @param name
+         * @param before
+         * @param after */
+        void ref(String name, String before, String after) {
+            record(REF, name, before == null ? "" : before,
+                   after == null ? "" : after);
+        }
+
+        /** Records that HEAD becomes the branch NAME.
+         * @param name */
+        void head(String name) {
+            record(HEAD, name);
+        }
+
+        /** Returns true iff no record was added. */
+        boolean isEmpty() {
+            return _Bytes.size() == 0;
+        }
+
+        /** Adds a record of kind KIND with the strings FIELDS. */
+        private void record(byte kind, String... fields) {
+            try {
+                _Out.writeByte(kind);
+                for (String field : fields) {
+                    _Out.writeUTF(field);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** The records. */
+        private ByteArrayOutputStream _Bytes = new ByteArrayOutputStream();
+        /** Writes the records. */
+        private DataOutputStream _Out = new DataOutputStream(_Bytes);
+    }
+
+    /** The log file. */
+    private File _File;
+    /** The checkpoint: the stage file. */
+    private File _Checkpoint;
+    /** The HEAD file. */
+    private File _Head;
+    /** Whether writes are forced to disk. */
+    private boolean _Sync;
+    /** Bytes of whole batches in the log. */
+    private long _Size;
+}